@@ -119,6 +119,16 @@ public class ConnectionOptions {
      */
     public static final String JUMPSTATION = "jumpstation";
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#jumpstations_shareTunnel">the online documentation</a>
+     */
+    public static final String SHARE_TUNNEL = "shareTunnel";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#jumpstations_shareTunnel">the online documentation</a>
+     */
+    public static final boolean SHARE_TUNNEL_DEFAULT = false;
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#fileCopyCommandForUnix">the online documentation</a>
      */
@@ -194,6 +204,16 @@ public class ConnectionOptions {
      */
     public static final String REMOTE_CHARACTER_ENCODING = "remoteCharacterEncoding";
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#outputPumpVirtualThreads">the online documentation</a>
+     */
+    public static final String OUTPUT_PUMP_VIRTUAL_THREADS = "outputPumpVirtualThreads";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#outputPumpVirtualThreads">the online documentation</a>
+     */
+    public static final boolean OUTPUT_PUMP_VIRTUAL_THREADS_DEFAULT = false;
+
     private final Map<String, Object> options;
 
     /**
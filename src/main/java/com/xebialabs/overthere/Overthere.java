@@ -31,6 +31,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 /**
  * Factory object to create {@link OverthereConnection connections}.
@@ -40,8 +42,30 @@ public class Overthere {
     // The "logger" field has to be declared and defined at the top so that the static initializer below can access it
     private static final Logger logger = LoggerFactory.getLogger(Overthere.class);
 
+    /**
+     * Name of the system property that, when set to <code>true</code>, makes Overthere scan the classpath for
+     * {@link Protocol @Protocol} annotated classes in addition to reading the precomputed protocol index.
+     */
+    public static final String SCAN_PROTOCOLS_PROPERTY = "overthere.protocols.scan";
+
     private static final OverthereConnector connector = new OverthereConnector();
     static {
+        int indexed = bootFromIndex();
+        if (Boolean.getBoolean(SCAN_PROTOCOLS_PROPERTY)) {
+            logger.debug("System property {} is set, scanning the classpath for protocols", SCAN_PROTOCOLS_PROPERTY);
+            bootFromScannit();
+        } else if (indexed == 0) {
+            logger.info("No protocols found in {}, scanning the classpath for protocols", ProtocolIndex.INDEX_RESOURCE);
+            bootFromScannit();
+        }
+    }
+
+    private static int bootFromIndex() {
+        ClassLoader classLoader = Overthere.class.getClassLoader();
+        return register(ProtocolIndex.load(classLoader != null ? classLoader : ClassLoader.getSystemClassLoader()));
+    }
+
+    private static void bootFromScannit() {
         if (Scannit.isBooted()) {
             logger.info("Scannit already booted, checking to see whether it has scanned 'com.xebialabs'");
             Set<Class<?>> protocols = Scannit.getInstance().getTypesAnnotatedWith(Protocol.class);
@@ -60,14 +84,22 @@ public class Overthere {
     }
 
     private static void boot(Scannit scannit) {
-        final Set<Class<?>> protocolClasses = scannit.getTypesAnnotatedWith(Protocol.class);
+        register(scannit.getTypesAnnotatedWith(Protocol.class));
+    }
+
+    private static int register(Iterable<Class<?>> protocolClasses) {
+        int registered = 0;
         for (Class<?> protocol : protocolClasses) {
-            if (OverthereConnectionBuilder.class.isAssignableFrom(protocol)) {
-                connector.registerProtocol((Class<? extends OverthereConnectionBuilder>) protocol);
-            } else {
+            if (!OverthereConnectionBuilder.class.isAssignableFrom(protocol)) {
                 logger.warn("Skipping class {} because it is not a HostConnectionBuilder.", protocol);
+            } else if (!protocol.isAnnotationPresent(Protocol.class)) {
+                logger.warn("Skipping class {} because it is not annotated with @Protocol.", protocol);
+            } else {
+                connector.registerProtocol((Class<? extends OverthereConnectionBuilder>) protocol);
+                registered++;
             }
         }
+        return registered;
     }
 
     private Overthere() {
@@ -85,4 +117,47 @@ public class Overthere {
         return connector.getConnection(protocol, options);
     }
 
+    /**
+     * Creates a connection asynchronously. If the returned future is cancelled after the connection has been
+     * established, the connection is closed.
+     *
+     * @param protocol The protocol to use, e.g. "local".
+     * @param options  A set of options to use for the connection.
+     * @param executor The executor to establish the connection on.
+     * @return a future that holds the connection once it has been established.
+     */
+    public static Future<OverthereConnection> getConnectionAsync(String protocol, final ConnectionOptions options, Executor executor) {
+        return connector.getConnectionAsync(protocol, options, executor);
+    }
+
+    /**
+     * Gets a connection from the shared {@link OverthereConnectionPool connection pool}. Closing the connection returns
+     * it to the pool, so that a subsequent request for the same protocol and options can reuse it.
+     *
+     * @param protocol The protocol to use, e.g. "local".
+     * @param options  A set of options to use for the connection.
+     * @return the pooled connection.
+     */
+    public static OverthereConnection getPooledConnection(String protocol, final ConnectionOptions options) {
+        return SharedConnectionPool.INSTANCE.getConnection(protocol, options);
+    }
+
+    /**
+     * Returns the shared {@link OverthereConnectionPool connection pool} used by
+     * {@link #getPooledConnection(String, ConnectionOptions)}.
+     *
+     * @return the shared pool.
+     */
+    public static OverthereConnectionPool getSharedConnectionPool() {
+        return SharedConnectionPool.INSTANCE;
+    }
+
+    static OverthereConnector getConnector() {
+        return connector;
+    }
+
+    private static class SharedConnectionPool {
+        private static final OverthereConnectionPool INSTANCE = new OverthereConnectionPool();
+    }
+
 }
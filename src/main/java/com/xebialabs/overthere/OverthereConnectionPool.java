@@ -0,0 +1,343 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.spi.BaseOverthereConnection;
+
+import static com.xebialabs.overthere.util.OverthereUtils.checkArgument;
+import static com.xebialabs.overthere.util.OverthereUtils.checkNotNull;
+import static com.xebialabs.overthere.util.OverthereUtils.checkState;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static java.lang.String.format;
+
+/**
+ * Pool of {@link OverthereConnection connections}, keyed by protocol and {@link ConnectionOptions connection options}.
+ * <p/>
+ * Connections handed out by the pool are returned to it when they are {@link OverthereConnection#close() closed}
+ * instead of being disconnected. A connection that is returned to the pool is reused by the next request for the same
+ * protocol and options, provided that it is still connected and has not been idle for longer than the idle timeout.
+ * The number of connections per key is limited; requests that exceed that limit wait for a connection to be returned.
+ * <p/>
+ * The pool works with all protocols, because it creates its connections through the regular
+ * {@link Overthere#getConnection(String, ConnectionOptions)} machinery.
+ * <p/>
+ * The {@link OverthereFile files} obtained from a pooled connection are the files of the underlying connection, so that
+ * they can be copied to and from files of other connections like before. Consequently, their
+ * {@link OverthereFile#getConnection()} returns the underlying connection: closing that one disconnects it instead of
+ * returning it to the pool, after which the pool discards it. Files must also not be used anymore after their
+ * connection has been returned to the pool, because by then the underlying connection may have been handed out again.
+ */
+public class OverthereConnectionPool implements Closeable {
+
+    /**
+     * Default maximum number of connections (in use and idle) per protocol and set of connection options.
+     */
+    public static final int MAX_CONNECTIONS_PER_KEY_DEFAULT = 8;
+
+    /**
+     * Default number of milliseconds that a connection may be idle in the pool before it is closed.
+     */
+    public static final long IDLE_TIMEOUT_MILLIS_DEFAULT = 60000;
+
+    /**
+     * Default number of milliseconds to wait for a connection when the maximum number of connections has been reached.
+     */
+    public static final long BORROW_TIMEOUT_MILLIS_DEFAULT = 120000;
+
+    private final OverthereConnector connector;
+    private final int maxConnectionsPerKey;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final Map<PoolKey, KeyedPool> pools = new HashMap<PoolKey, KeyedPool>();
+    private boolean closed;
+
+    /**
+     * Creates a pool with the default limits.
+     */
+    public OverthereConnectionPool() {
+        this(MAX_CONNECTIONS_PER_KEY_DEFAULT, IDLE_TIMEOUT_MILLIS_DEFAULT, BORROW_TIMEOUT_MILLIS_DEFAULT);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxConnectionsPerKey the maximum number of connections (in use and idle) per protocol and set of connection options.
+     * @param idleTimeoutMillis    the number of milliseconds that a connection may be idle in the pool before it is closed.
+     *                             Use 0 to never evict idle connections.
+     * @param borrowTimeoutMillis  the number of milliseconds to wait for a connection when the maximum number of connections
+     *                             has been reached.
+     */
+    public OverthereConnectionPool(int maxConnectionsPerKey, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        this(Overthere.getConnector(), maxConnectionsPerKey, idleTimeoutMillis, borrowTimeoutMillis);
+    }
+
+    OverthereConnectionPool(OverthereConnector connector, int maxConnectionsPerKey, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        checkArgument(maxConnectionsPerKey > 0, "maxConnectionsPerKey must be positive, not %s", maxConnectionsPerKey);
+        checkArgument(idleTimeoutMillis >= 0, "idleTimeoutMillis must not be negative, not %s", idleTimeoutMillis);
+        checkArgument(borrowTimeoutMillis >= 0, "borrowTimeoutMillis must not be negative, not %s", borrowTimeoutMillis);
+        this.connector = checkNotNull(connector, "connector is null");
+        this.maxConnectionsPerKey = maxConnectionsPerKey;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * Gets a connection from the pool, creating one if no idle connection for the protocol and options is available.
+     * Closing the returned connection returns it to the pool.
+     *
+     * @param protocol The protocol to use, e.g. "local".
+     * @param options  A set of options to use for the connection.
+     * @return the connection.
+     */
+    public OverthereConnection getConnection(String protocol, ConnectionOptions options) {
+        checkNotNull(protocol, "protocol is null");
+        checkNotNull(options, "options is null");
+
+        PoolKey key = new PoolKey(protocol, new ConnectionOptions(options));
+        KeyedPool pool = getKeyedPool(key);
+        pool.acquirePermit();
+        try {
+            OverthereConnection connection = pool.takeIdleConnection();
+            if (connection == null) {
+                logger.debug("No idle connection available for {}, creating a new one", key);
+                connection = connector.getConnection(protocol, key.options);
+            }
+            return new PooledOverthereConnection(this, pool, connection);
+        } catch (RuntimeException exc) {
+            pool.permits.release();
+            throw exc;
+        }
+    }
+
+    /**
+     * Closes all connections that have been idle for longer than the idle timeout.
+     *
+     * @return the number of connections that were closed.
+     */
+    public int evictIdleConnections() {
+        List<OverthereConnection> evicted = new ArrayList<OverthereConnection>();
+        synchronized (this) {
+            for (KeyedPool pool : pools.values()) {
+                pool.collectExpired(evicted);
+            }
+        }
+        closeAll(evicted);
+        return evicted.size();
+    }
+
+    /**
+     * Returns the number of idle connections in the pool.
+     *
+     * @return the number of idle connections.
+     */
+    public synchronized int getIdleConnectionCount() {
+        int count = 0;
+        for (KeyedPool pool : pools.values()) {
+            count += pool.idle.size();
+        }
+        return count;
+    }
+
+    /**
+     * Closes all idle connections and makes sure that connections still in use are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        List<OverthereConnection> idle = new ArrayList<OverthereConnection>();
+        synchronized (this) {
+            closed = true;
+            for (KeyedPool pool : pools.values()) {
+                for (IdleConnection each : pool.idle) {
+                    idle.add(each.connection);
+                }
+                pool.idle.clear();
+            }
+            pools.clear();
+        }
+        closeAll(idle);
+    }
+
+    private synchronized KeyedPool getKeyedPool(PoolKey key) {
+        checkState(!closed, "Connection pool has been closed");
+        KeyedPool pool = pools.get(key);
+        if (pool == null) {
+            pool = new KeyedPool(key);
+            pools.put(key, pool);
+        }
+        return pool;
+    }
+
+    void release(KeyedPool pool, OverthereConnection connection, OverthereFile originalWorkingDirectory) {
+        try {
+            boolean reusable = isHealthy(connection);
+            if (!reusable) {
+                logger.warn("Not reusing connection {} because it was closed or lost while it was borrowed from the pool. Close the connection handed out " +
+                        "by the pool instead of the one returned by OverthereFile.getConnection()", connection);
+            }
+            if (reusable) {
+                try {
+                    connection.setWorkingDirectory(originalWorkingDirectory);
+                } catch (RuntimeException exc) {
+                    logger.debug(format("Cannot reset working directory of %s, not reusing it", connection), exc);
+                    reusable = false;
+                }
+            }
+            if (reusable && connection instanceof BaseOverthereConnection) {
+                ((BaseOverthereConnection) connection).deleteTemporaryFiles();
+            }
+
+            List<OverthereConnection> toClose = new ArrayList<OverthereConnection>();
+            synchronized (this) {
+                if (reusable && !closed) {
+                    pool.idle.push(new IdleConnection(connection, System.currentTimeMillis()));
+                } else {
+                    toClose.add(connection);
+                }
+                pool.collectExpired(toClose);
+            }
+            closeAll(toClose);
+        } finally {
+            pool.permits.release();
+        }
+    }
+
+    private static boolean isHealthy(OverthereConnection connection) {
+        return !(connection instanceof BaseOverthereConnection) || ((BaseOverthereConnection) connection).isConnected();
+    }
+
+    private static void closeAll(List<OverthereConnection> connections) {
+        for (OverthereConnection each : connections) {
+            logger.debug("Closing pooled connection {}", each);
+            closeQuietly(each);
+        }
+    }
+
+    final class KeyedPool {
+        private final PoolKey key;
+        private final Semaphore permits = new Semaphore(maxConnectionsPerKey, true);
+        private final Deque<IdleConnection> idle = new ArrayDeque<IdleConnection>();
+
+        private KeyedPool(PoolKey key) {
+            this.key = key;
+        }
+
+        private void acquirePermit() {
+            try {
+                if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new RuntimeIOException(format("Timed out after %d ms waiting for a pooled connection for %s", borrowTimeoutMillis, key));
+                }
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeIOException(format("Interrupted while waiting for a pooled connection for %s", key), exc);
+            }
+        }
+
+        private OverthereConnection takeIdleConnection() {
+            List<OverthereConnection> toClose = new ArrayList<OverthereConnection>();
+            OverthereConnection found = null;
+            synchronized (OverthereConnectionPool.this) {
+                collectExpired(toClose);
+                while (found == null && !idle.isEmpty()) {
+                    OverthereConnection candidate = idle.pop().connection;
+                    if (isHealthy(candidate)) {
+                        found = candidate;
+                    } else {
+                        logger.debug("Discarding pooled connection {} because it is no longer connected", candidate);
+                        toClose.add(candidate);
+                    }
+                }
+            }
+            closeAll(toClose);
+            return found;
+        }
+
+        private void collectExpired(List<OverthereConnection> expired) {
+            if (idleTimeoutMillis == 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Iterator<IdleConnection> it = idle.iterator(); it.hasNext(); ) {
+                IdleConnection each = it.next();
+                if (now - each.idleSince >= idleTimeoutMillis) {
+                    it.remove();
+                    expired.add(each.connection);
+                }
+            }
+        }
+    }
+
+    private static class IdleConnection {
+        private final OverthereConnection connection;
+        private final long idleSince;
+
+        private IdleConnection(OverthereConnection connection, long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    private static class PoolKey {
+        private final String protocol;
+        private final ConnectionOptions options;
+
+        private PoolKey(String protocol, ConnectionOptions options) {
+            this.protocol = protocol;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            PoolKey that = (PoolKey) o;
+            return protocol.equals(that.protocol) && options.equals(that.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * protocol.hashCode() + options.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return protocol + ":" + options;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(OverthereConnectionPool.class);
+
+}
@@ -12,10 +12,16 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.xebialabs.overthere.ConnectionOptions.JUMPSTATION;
 import static com.xebialabs.overthere.ConnectionOptions.PROTOCOL;
+import static com.xebialabs.overthere.ConnectionOptions.SHARE_TUNNEL;
+import static com.xebialabs.overthere.ConnectionOptions.SHARE_TUNNEL_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SSH_PROTOCOL;
 import static com.xebialabs.overthere.ssh.SshJumpstationConnectionBuilder.SSH_JUMPSTATION_PROTOCOL;
 import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
@@ -26,6 +32,7 @@ public class OverthereConnector {
     final AtomicReference<Map<String, Class<? extends OverthereConnectionBuilder>>> protocols = new AtomicReference<Map<String, Class<? extends OverthereConnectionBuilder>>>(
             new HashMap<String, Class<? extends OverthereConnectionBuilder>>());
 
+    private final SharedAddressPortMapperRegistry sharedJumpstations = new SharedAddressPortMapperRegistry();
 
     public void registerProtocol(Class<? extends OverthereConnectionBuilder> builderClass) {
         if (!builderClass.isAnnotationPresent(Protocol.class)) {
@@ -60,7 +67,16 @@ public class OverthereConnector {
                 jumpstationProtocol = SSH_JUMPSTATION_PROTOCOL;
             }
 
-            mapper = (AddressPortMapper) Overthere.getConnection(jumpstationProtocol, jumpstationOptions);
+            if (jumpstationOptions.getBoolean(SHARE_TUNNEL, SHARE_TUNNEL_DEFAULT)) {
+                mapper = sharedJumpstations.acquire(jumpstationProtocol, jumpstationOptions, new SharedAddressPortMapperRegistry.MapperFactory() {
+                    @Override
+                    public AddressPortMapper create(String protocol, ConnectionOptions options) {
+                        return (AddressPortMapper) Overthere.getConnection(protocol, options);
+                    }
+                });
+            } else {
+                mapper = (AddressPortMapper) Overthere.getConnection(jumpstationProtocol, jumpstationOptions);
+            }
         }
 
         try {
@@ -71,6 +87,42 @@ public class OverthereConnector {
         }
     }
 
+    /**
+     * Creates a connection asynchronously.
+     * <p/>
+     * If the returned future is cancelled after the connection has been established, the connection is closed.
+     *
+     * @param protocol The protocol to use, e.g. "local".
+     * @param options  A set of options to use for the connection.
+     * @param executor The executor to establish the connection on.
+     * @return a future that holds the connection once it has been established.
+     */
+    public Future<OverthereConnection> getConnectionAsync(final String protocol, final ConnectionOptions options, Executor executor) {
+        ConnectionFuture future = new ConnectionFuture(new Callable<OverthereConnection>() {
+            @Override
+            public OverthereConnection call() {
+                return getConnection(protocol, options);
+            }
+        });
+        executor.execute(future);
+        return future;
+    }
+
+    private static class ConnectionFuture extends FutureTask<OverthereConnection> {
+        private ConnectionFuture(Callable<OverthereConnection> callable) {
+            super(callable);
+        }
+
+        @Override
+        protected void set(OverthereConnection connection) {
+            super.set(connection);
+            if (isCancelled()) {
+                logger.debug("Closing connection {} because its future was cancelled", connection);
+                closeQuietly(connection);
+            }
+        }
+    }
+
     private OverthereConnection buildConnection(String protocol, ConnectionOptions options, AddressPortMapper mapper) {
         final Class<? extends OverthereConnectionBuilder> connectionBuilderClass = protocols.get().get(protocol);
         try {
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere;
+
+/**
+ * An {@link OverthereExecutionOutputHandler} that receives the characters of output in chunks. When a handler
+ * implements this interface, {@link #handleChars(char[], int, int)} is invoked instead of {@link #handleChar(char)}.
+ * The characters of a line are always passed before {@link #handleLine(String)} is invoked for that line.
+ * <p/>
+ * Existing handlers can be adapted with {@link com.xebialabs.overthere.util.OverthereExecutionOutputChunkAdapter#chunkHandler(OverthereExecutionOutputHandler)}.
+ */
+public interface OverthereExecutionOutputChunkHandler extends OverthereExecutionOutputHandler {
+    /**
+     * Invoked when an executed command generates a chunk of output. The array is reused after this method returns, so
+     * implementations must copy the characters they want to keep.
+     *
+     * @param chars  the buffer that holds the characters of output generated.
+     * @param offset the offset of the first character in the buffer.
+     * @param length the number of characters.
+     */
+    void handleChars(char[] chars, int offset, int length);
+}
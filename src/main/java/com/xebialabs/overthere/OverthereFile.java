@@ -142,6 +142,13 @@ public interface OverthereFile {
      */
     long length();
 
+    /**
+     * Discards the metadata of this file, such as its type, length, permissions and modification time, that an
+     * implementation may have kept from earlier calls, so that the next call retrieves it from the host again. This is
+     * needed when the file may have been changed by other means than this object.
+     */
+    void refresh();
+
     /**
      * Returns an input stream to read from this file. The complete contents of this input stream must be read before
      * another operation on this file or its corresponding {@link OverthereConnection} is performed.
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.xebialabs.overthere.util.OverthereUtils.checkState;
+
+/**
+ * {@link OverthereConnection} handed out by an {@link OverthereConnectionPool}. Delegates to a real connection and
+ * returns that connection to the pool when it is closed.
+ */
+class PooledOverthereConnection implements OverthereConnection {
+
+    private final OverthereConnectionPool pool;
+    private final OverthereConnectionPool.KeyedPool keyedPool;
+    private final OverthereConnection delegate;
+    private final OverthereFile originalWorkingDirectory;
+    private final AtomicBoolean returned = new AtomicBoolean(false);
+
+    PooledOverthereConnection(OverthereConnectionPool pool, OverthereConnectionPool.KeyedPool keyedPool, OverthereConnection delegate) {
+        this.pool = pool;
+        this.keyedPool = keyedPool;
+        this.delegate = delegate;
+        this.originalWorkingDirectory = delegate.getWorkingDirectory();
+    }
+
+    /**
+     * Returns the connection that is borrowed from the pool.
+     *
+     * @return the underlying connection.
+     */
+    OverthereConnection getDelegate() {
+        return delegate;
+    }
+
+    private OverthereConnection checkedDelegate() {
+        checkState(!returned.get(), "Connection %s has already been returned to the pool", delegate);
+        return delegate;
+    }
+
+    @Override
+    public OperatingSystemFamily getHostOperatingSystem() {
+        return checkedDelegate().getHostOperatingSystem();
+    }
+
+    /**
+     * Returns a file of the underlying connection. Its {@link OverthereFile#getConnection()} is that connection, not
+     * this one, so it must not be used to close the connection. See {@link OverthereConnectionPool}.
+     */
+    @Override
+    public OverthereFile getFile(String hostPath) {
+        return checkedDelegate().getFile(hostPath);
+    }
+
+    @Override
+    public OverthereFile getFile(OverthereFile parent, String child) {
+        return checkedDelegate().getFile(parent, child);
+    }
+
+    @Override
+    public OverthereFile getTempFile(String nameTemplate) {
+        return checkedDelegate().getTempFile(nameTemplate);
+    }
+
+    @Override
+    public OverthereFile getTempFile(String prefix, String suffix) throws RuntimeIOException {
+        return checkedDelegate().getTempFile(prefix, suffix);
+    }
+
+    @Override
+    public OverthereFile getWorkingDirectory() {
+        return checkedDelegate().getWorkingDirectory();
+    }
+
+    @Override
+    public void setWorkingDirectory(OverthereFile workingDirectory) {
+        checkedDelegate().setWorkingDirectory(workingDirectory);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public int execute(OverthereProcessOutputHandler handler, CmdLine commandLine) {
+        return checkedDelegate().execute(handler, commandLine);
+    }
+
+    @Override
+    public int execute(CmdLine commandLine) {
+        return checkedDelegate().execute(commandLine);
+    }
+
+    @Override
+    public int execute(OverthereExecutionOutputHandler stdoutHandler, OverthereExecutionOutputHandler stderrHandler, CmdLine commandLine) {
+        return checkedDelegate().execute(stdoutHandler, stderrHandler, commandLine);
+    }
+
+    @Override
+    public OverthereProcess startProcess(CmdLine commandLine) {
+        return checkedDelegate().startProcess(commandLine);
+    }
+
+    @Override
+    public boolean canStartProcess() {
+        return checkedDelegate().canStartProcess();
+    }
+
+    /**
+     * Returns the connection to the pool it was borrowed from. Subsequent invocations have no effect.
+     */
+    @Override
+    public void close() {
+        if (returned.compareAndSet(false, true)) {
+            pool.release(keyedPool, delegate, originalWorkingDirectory);
+        }
+    }
+
+    @Override
+    public ConnectionOptions getOptions() {
+        return delegate.getOptions();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.spi.OverthereConnectionBuilder;
+
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+
+/**
+ * Precomputed index of the {@link OverthereConnectionBuilder connection builders} that are available on the classpath.
+ * <p/>
+ * The index uses the {@link java.util.ServiceLoader} file format: every <code>META-INF/services/com.xebialabs.overthere.spi.OverthereConnectionBuilder</code>
+ * resource lists the fully qualified class names of builders, one per line. Unlike {@link java.util.ServiceLoader}, the
+ * classes are not instantiated, because connection builders are constructed per connection.
+ */
+class ProtocolIndex {
+
+    static final String INDEX_RESOURCE = "META-INF/services/" + OverthereConnectionBuilder.class.getName();
+
+    private ProtocolIndex() {
+        // should not instantiate
+    }
+
+    /**
+     * Loads the builder classes listed in all protocol index resources visible to the class loader.
+     *
+     * @param classLoader the class loader to load the index resources and the builder classes with.
+     * @return the builder classes.
+     */
+    static List<Class<?>> load(ClassLoader classLoader) {
+        List<Class<?>> builderClasses = new ArrayList<Class<?>>();
+        for (String className : readClassNames(classLoader)) {
+            try {
+                builderClasses.add(Class.forName(className, false, classLoader));
+            } catch (ClassNotFoundException | LinkageError exc) {
+                logger.warn("Skipping protocol class {} listed in {} because it cannot be loaded: {}", className, INDEX_RESOURCE, exc.toString());
+            }
+        }
+        return builderClasses;
+    }
+
+    private static Set<String> readClassNames(ClassLoader classLoader) {
+        Set<String> classNames = new LinkedHashSet<String>();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(INDEX_RESOURCE);
+            while (resources.hasMoreElements()) {
+                readClassNames(resources.nextElement(), classNames);
+            }
+        } catch (IOException exc) {
+            logger.warn("Cannot read protocol index " + INDEX_RESOURCE, exc);
+        }
+        return classNames;
+    }
+
+    private static void readClassNames(URL resource, Set<String> classNames) throws IOException {
+        logger.trace("Reading protocol index {}", resource);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int commentStart = line.indexOf('#');
+                if (commentStart >= 0) {
+                    line = line.substring(0, commentStart);
+                }
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    classNames.add(line);
+                }
+            }
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ProtocolIndex.class);
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.net.SocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.spi.AddressPortMapper;
+import com.xebialabs.overthere.spi.BaseOverthereConnection;
+
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+
+/**
+ * Reference counted registry of jumpstation {@link AddressPortMapper address-port mappers}. Connections that use equal
+ * jumpstation protocol and options get a lease on the same mapper. The mapper is closed when the last lease is closed.
+ */
+class SharedAddressPortMapperRegistry {
+
+    interface MapperFactory {
+        AddressPortMapper create(String protocol, ConnectionOptions options);
+    }
+
+    private final Map<Key, SharedMapper> mappers = new HashMap<Key, SharedMapper>();
+
+    /**
+     * Returns a lease on the shared mapper for the protocol and options, creating the mapper if there is none yet or if
+     * the existing one is no longer connected. The lease must be closed to release the mapper.
+     */
+    AddressPortMapper acquire(String protocol, ConnectionOptions options, MapperFactory factory) {
+        Key key = new Key(protocol, new ConnectionOptions(options));
+        SharedMapper shared;
+        synchronized (this) {
+            shared = mappers.get(key);
+            if (shared == null) {
+                shared = new SharedMapper(key);
+                mappers.put(key, shared);
+            }
+            shared.refCount++;
+        }
+
+        try {
+            return new Lease(shared, shared.getOrCreate(factory));
+        } catch (RuntimeException exc) {
+            release(shared);
+            throw exc;
+        }
+    }
+
+    private void release(SharedMapper shared) {
+        AddressPortMapper toClose = null;
+        synchronized (this) {
+            if (--shared.refCount == 0) {
+                mappers.remove(shared.key);
+                toClose = shared.detach();
+            }
+        }
+        if (toClose != null) {
+            logger.debug("Closing shared jumpstation {} because it is no longer used", toClose);
+            closeQuietly(toClose);
+        }
+    }
+
+    synchronized int size() {
+        return mappers.size();
+    }
+
+    private static boolean isConnected(AddressPortMapper mapper) {
+        return !(mapper instanceof BaseOverthereConnection) || ((BaseOverthereConnection) mapper).isConnected();
+    }
+
+    private static class SharedMapper {
+        private final Key key;
+        private int refCount;
+        private AddressPortMapper mapper;
+
+        private SharedMapper(Key key) {
+            this.key = key;
+        }
+
+        private synchronized AddressPortMapper getOrCreate(MapperFactory factory) {
+            if (mapper != null && !isConnected(mapper)) {
+                logger.info("Shared jumpstation {} is no longer connected, replacing it", mapper);
+                closeQuietly(mapper);
+                mapper = null;
+            }
+            if (mapper == null) {
+                mapper = factory.create(key.protocol, key.options);
+            }
+            return mapper;
+        }
+
+        private synchronized AddressPortMapper detach() {
+            AddressPortMapper detached = mapper;
+            mapper = null;
+            return detached;
+        }
+    }
+
+    private class Lease implements AddressPortMapper {
+        private final SharedMapper shared;
+        private final AddressPortMapper mapper;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(SharedMapper shared, AddressPortMapper mapper) {
+            this.shared = shared;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public InetSocketAddress map(InetSocketAddress address) {
+            return mapper.map(address);
+        }
+
+        @Override
+        public SocketFactory socketFactory() {
+            return mapper.socketFactory();
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(shared);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mapper.toString();
+        }
+    }
+
+    private static class Key {
+        private final String protocol;
+        private final ConnectionOptions options;
+
+        private Key(String protocol, ConnectionOptions options) {
+            this.protocol = protocol;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+            return protocol.equals(that.protocol) && options.equals(that.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * protocol.hashCode() + options.hashCode();
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedAddressPortMapperRegistry.class);
+
+}
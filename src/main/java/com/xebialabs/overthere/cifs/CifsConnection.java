@@ -24,6 +24,7 @@ package com.xebialabs.overthere.cifs;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import javax.net.SocketFactory;
 
 import com.xebialabs.overthere.proxy.ProxyConnection;
 import org.slf4j.Logger;
@@ -92,6 +93,10 @@ public abstract class CifsConnection extends BaseOverthereConnection {
         if(mapper instanceof ProxyConnection) {
             throw new IllegalArgumentException("Cannot open a cifs:" + cifsConnectionType.toString().toLowerCase() + ": connection through an HTTP proxy");
         }
+        if (mapper.socketFactory() != SocketFactory.getDefault()) {
+            // the file access of jCIFS opens its own sockets
+            throw new IllegalArgumentException("Cannot open a cifs:" + cifsConnectionType.toString().toLowerCase() + ": connection through a mapper that needs its own sockets");
+        }
         this.unmappedAddress = options.get(ADDRESS);
         this.unmappedPort = options.get(PORT, this.cifsConnectionType.getDefaultPort(options));
         InetSocketAddress addressPort = mapper.map(createUnresolved(unmappedAddress, unmappedPort));
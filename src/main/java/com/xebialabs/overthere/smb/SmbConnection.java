@@ -98,6 +98,7 @@ public class SmbConnection extends BaseOverthereConnection {
         SmbConfig config = SmbConfig.builder()
                 .withSigningRequired(requireSigning)
                 .withTransportLayerFactory(transportLayerFactory)
+                .withSocketFactory(mapper.socketFactory())
                 .withSecurityProvider(new BCSecurityProvider())
                 .build();
         client = new SMBClient(config);
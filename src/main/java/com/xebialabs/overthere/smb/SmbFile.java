@@ -25,6 +25,7 @@ package com.xebialabs.overthere.smb;
 import com.hierynomus.msdtyp.AccessMask;
 import com.hierynomus.mserref.NtStatus;
 import com.hierynomus.msfscc.FileAttributes;
+import com.hierynomus.msfscc.fileinformation.FileBasicInformation;
 import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
 import com.hierynomus.mssmb2.SMB2CreateDisposition;
 import com.hierynomus.mssmb2.SMB2ShareAccess;
@@ -160,9 +161,19 @@ public class SmbFile extends BaseOverthereFile<SmbConnection> {
         return checkAttributes(FileAttributes.FILE_ATTRIBUTE_HIDDEN);
     }
 
+    /**
+     * @return the last write time of this file, or <code>0</code> if it does not exist, like {@link java.io.File#lastModified()}.
+     */
     @Override
     public long lastModified() {
-        return 0;
+        try {
+            return getShare().getFileInformation(getPathOnShare(), FileBasicInformation.class).getLastWriteTime().toEpochMillis();
+        } catch (SMBApiException e) {
+            if (e.getStatus().equals(NtStatus.STATUS_OBJECT_NAME_NOT_FOUND) ||
+                    e.getStatus().equals(NtStatus.STATUS_OBJECT_PATH_NOT_FOUND))
+                return 0;
+            throw new RuntimeIOException(e);
+        }
     }
 
     @Override
@@ -23,13 +23,14 @@
 package com.xebialabs.overthere.spi;
 
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,6 +79,7 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
     protected int temporaryFileHolderDirectoryNameSuffix = 0;
     protected OverthereFile workingDirectory;
     private volatile boolean isConnected;
+    private volatile Executor outputPumpExecutor;
     private Throwable openStack;
 
     protected BaseOverthereConnection(final String protocol, final ConnectionOptions options, final AddressPortMapper mapper, final boolean canStartProcess) {
@@ -93,6 +95,8 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
         this.temporaryFileCreationRetries = options.getInteger(TEMPORARY_FILE_CREATION_RETRIES, TEMPORARY_FILE_CREATION_RETRIES_DEFAULT);
         this.temporaryFileHolderDirectoryNamePrefix = "ot-" + (new SimpleDateFormat("yyyyMMdd'T'HHmmssSSS")).format(new Date());
         this.streamBufferSize = options.getInteger(REMOTE_COPY_BUFFER_SIZE, REMOTE_COPY_BUFFER_SIZE_DEFAULT);
+        this.outputPumpExecutor = options.getBoolean(OUTPUT_PUMP_VIRTUAL_THREADS, OUTPUT_PUMP_VIRTUAL_THREADS_DEFAULT)
+                ? OutputPumpExecutors.virtualThreads() : OutputPumpExecutors.shared();
     }
 
     protected void connected() {
@@ -121,9 +125,7 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
         }
 
         try {
-            if (deleteTemporaryDirectoryOnDisconnect) {
-                deleteConnectionTemporaryDirectory();
-            }
+            deleteTemporaryFiles();
 
             doClose();
 
@@ -135,6 +137,16 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
         }
     }
 
+    /**
+     * Checks whether this connection is (still) connected, i.e. it has been connected and has not been closed yet.
+     * Subclasses that can detect a broken underlying transport should override this method.
+     *
+     * @return <code>true</code> if the connection is usable, <code>false</code> otherwise.
+     */
+    public boolean isConnected() {
+        return isConnected;
+    }
+
     protected void logDisconnect() {
         logger.info("Disconnected from {}", this);
     }
@@ -211,6 +223,17 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
         }
     }
 
+    /**
+     * Depending on the {@link ConnectionOptions#TEMPORARY_DIRECTORY_DELETE_ON_DISCONNECT} connection option, deletes
+     * all temporary files that have been created on the host through {@link #getTempFile(String)} so far. The
+     * connection stays open. Invoked on {@link #close()} and when a pooled connection is returned to its pool.
+     */
+    public final synchronized void deleteTemporaryFiles() {
+        if (deleteTemporaryDirectoryOnDisconnect) {
+            deleteConnectionTemporaryDirectory();
+        }
+    }
+
     private void deleteConnectionTemporaryDirectory() {
         for (OverthereFile d : temporaryFileHolderDirectories) {
             try {
@@ -220,6 +243,7 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
                 logger.warn("Got exception while deleting connection temporary directory {}. Ignoring it.", d, exc);
             }
         }
+        temporaryFileHolderDirectories.clear();
     }
 
     /**
@@ -267,19 +291,38 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
         return execute(sysoutHandler(), syserrHandler(), commandLine);
     }
 
+    /**
+     * Returns the executor that runs the threads reading the stdout and stderr of commands executed by
+     * {@link #execute(OverthereExecutionOutputHandler, OverthereExecutionOutputHandler, CmdLine)}. Protocols use it too
+     * for other streams that must be read while a command runs.
+     *
+     * @return the executor.
+     */
+    public Executor getOutputPumpExecutor() {
+        return outputPumpExecutor;
+    }
+
+    /**
+     * Sets the executor that runs the threads reading the stdout and stderr of commands executed by
+     * {@link #execute(OverthereExecutionOutputHandler, OverthereExecutionOutputHandler, CmdLine)}. Every execution
+     * needs two threads at the same time, so the executor must not run its tasks on the calling thread.
+     *
+     * @param outputPumpExecutor the executor.
+     */
+    public void setOutputPumpExecutor(Executor outputPumpExecutor) {
+        this.outputPumpExecutor = checkNotNull(outputPumpExecutor, "outputPumpExecutor is null");
+    }
+
     @Override
     public int execute(final OverthereExecutionOutputHandler stdoutHandler, final OverthereExecutionOutputHandler stderrHandler, final CmdLine commandLine) {
-        final OverthereProcess process = startProcess(commandLine);
-        Thread stdoutReaderThread = null;
-        Thread stderrReaderThread = null;
+        final OverthereProcess process = startProcessForExecute(commandLine);
+        OutputPump stdoutPump = null;
+        OutputPump stderrPump = null;
         final CountDownLatch latch = new CountDownLatch(2);
         try {
             Map<String, String> mdcContext =  MDC.getCopyOfContextMap();
-            stdoutReaderThread = getThread("stdout", commandLine.toString(), stdoutHandler, process.getStdout(), latch, mdcContext);
-            stdoutReaderThread.start();
-
-            stderrReaderThread = getThread("stderr", commandLine.toString(), stderrHandler, process.getStderr(), latch, mdcContext);
-            stderrReaderThread.start();
+            stdoutPump = startPump("stdout", commandLine.toString(), stdoutHandler, process.getStdout(), latch, mdcContext);
+            stderrPump = startPump("stderr", commandLine.toString(), stderrHandler, process.getStderr(), latch, mdcContext);
 
             try {
                 latch.await();
@@ -293,67 +336,32 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
                 throw new RuntimeIOException("Execution interrupted", exc);
             }
         } finally {
-            quietlyJoinThread(stdoutReaderThread);
-            quietlyJoinThread(stderrReaderThread);
+            quietlyStopPump(stdoutPump);
+            quietlyStopPump(stderrPump);
         }
     }
 
-    private void quietlyJoinThread(final Thread thread) {
-        if (thread != null) {
-            try {
-                // interrupt the thread in case it is stuck waiting for output that will never come
-                thread.interrupt();
-                thread.join();
-            } catch (InterruptedException ignored) {
-                Thread.currentThread().interrupt();
-            }
+    private void quietlyStopPump(final OutputPump pump) {
+        if (pump != null) {
+            pump.stop();
         }
     }
 
-    private Thread getThread(final String streamName, final String commandLine, final OverthereExecutionOutputHandler outputHandler, final InputStream stream, final CountDownLatch latch, final Map<String, String> mdcContext) {
-        Thread t = new Thread(format("%s reader", streamName)) {
-            @Override
-            public void run() {
-                Map<String, String> previous = MDC.getCopyOfContextMap();
-                setMDCContext(mdcContext);
-                StringBuilder lineBuffer = new StringBuilder();
-                InputStreamReader stdoutReader = new InputStreamReader(stream);
-                latch.countDown();
-                try {
-                    int cInt = stdoutReader.read();
-                    while (cInt > -1) {
-                        char c = (char) cInt;
-                        outputHandler.handleChar(c);
-                        if (c != '\r' && c != '\n') {
-                            lineBuffer.append(c);
-                        }
-                        if (c == '\n') {
-                            outputHandler.handleLine(lineBuffer.toString());
-                            lineBuffer.setLength(0);
-                        }
-                        cInt = stdoutReader.read();
-                    }
-                } catch (Exception exc) {
-                    logger.error(format("An exception occured reading %s while executing [%s] on %s", streamName, commandLine, this), exc);
-                } finally {
-                    closeQuietly(stdoutReader);
-                    if (lineBuffer.length() > 0) {
-                        outputHandler.handleLine(lineBuffer.toString());
-                    }
-                    setMDCContext(previous);
-                }
-            }
+    /**
+     * Returns the character set in which the output of executed commands is decoded: the
+     * {@link ConnectionOptions#REMOTE_CHARACTER_ENCODING remote character encoding} if it has been set, or the default
+     * character set of this JVM otherwise.
+     */
+    private Charset getOutputCharset() {
+        String encoding = options.getOptional(REMOTE_CHARACTER_ENCODING);
+        return encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+    }
 
-            private void setMDCContext(Map<String, String> context) {
-                if (context == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(context);
-                }
-            }
-        };
-        t.setDaemon(true);
-        return t;
+    private OutputPump startPump(final String streamName, final String commandLine, final OverthereExecutionOutputHandler outputHandler, final InputStream stream, final CountDownLatch latch, final Map<String, String> mdcContext) {
+        OutputPump pump = new OutputPump(streamName, commandLine, outputHandler, stream, getOutputCharset(), latch, mdcContext);
+        outputPumpExecutor.execute(pump);
+        pump.submitted();
+        return pump;
     }
 
     /**
@@ -381,6 +389,19 @@ public abstract class BaseOverthereConnection implements OverthereConnection {
         throw new UnsupportedOperationException("Cannot start a process on " + this);
     }
 
+    /**
+     * Starts the process for a command that is run by
+     * {@link #execute(OverthereExecutionOutputHandler, OverthereExecutionOutputHandler, CmdLine)}. Unlike processes
+     * returned by {@link #startProcess(CmdLine)}, the stdin of this process is never written to, which allows
+     * implementations to run the command in a cheaper way. The default implementation invokes {@link #startProcess(CmdLine)}.
+     *
+     * @param commandLine the command line to execute.
+     * @return an object representing the executing command.
+     */
+    protected OverthereProcess startProcessForExecute(CmdLine commandLine) {
+        return startProcess(commandLine);
+    }
+
     /**
      * Checks whether a process can be started on this connection.
      *
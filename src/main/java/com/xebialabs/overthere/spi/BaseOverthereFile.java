@@ -91,6 +91,14 @@ public abstract class BaseOverthereFile<C extends BaseOverthereConnection> imple
         delete();
     }
 
+    /**
+     * Discards the metadata of this file that has been kept from earlier calls, so that the next call retrieves it from
+     * the host again. The default implementation does nothing, because it keeps no metadata.
+     */
+    @Override
+    public void refresh() {
+    }
+
     @Override
     public final void copyTo(final OverthereFile dest) {
         checkArgument(dest instanceof BaseOverthereFile<?>, "dest is not a subclass of BaseOverthereFile");
@@ -103,9 +111,23 @@ public abstract class BaseOverthereFile<C extends BaseOverthereConnection> imple
     }
 
     protected void copyFrom(OverthereFile source) {
+        if (source instanceof BaseOverthereFile<?> && ((BaseOverthereFile<?>) source).transmitTo(this)) {
+            return;
+        }
         OverthereFileCopier.copy(source, this);
     }
 
+    /**
+     * Lets this file transmit itself to a destination on another connection that has no specific way to copy it. The
+     * default implementation does nothing.
+     *
+     * @param dest the file to copy to.
+     * @return <code>true</code> if this file has been copied, <code>false</code> if the destination has to copy it.
+     */
+    protected boolean transmitTo(OverthereFile dest) {
+        return false;
+    }
+
     protected void shortCircuitCopyFrom(OverthereFile source) {
         checkArgument(source.exists(), "Source file [%s] does not exist", source);
 
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.spi;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
+import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+
+import static com.xebialabs.overthere.util.OverthereExecutionOutputChunkAdapter.chunkHandler;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static java.lang.String.format;
+
+/**
+ * Reads the stdout or stderr stream of an executed command and passes it to an {@link OverthereExecutionOutputHandler}.
+ * The stream is decoded in blocks with the character set of the connection.
+ * Runs on an {@link java.util.concurrent.Executor}; {@link #stop()} interrupts it and waits until it has finished.
+ */
+class OutputPump implements Runnable {
+
+    static final int BUFFER_SIZE = 8192;
+
+    private final String streamName;
+    private final String commandLine;
+    private final OverthereExecutionOutputChunkHandler outputHandler;
+    private final InputStream stream;
+    private final CountDownLatch started;
+    private final Map<String, String> mdcContext;
+    private final Charset charset;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final StringBuilder lineBuffer = new StringBuilder();
+    private Thread runner;
+    private boolean submitted;
+    private boolean stopped;
+
+    OutputPump(String streamName, String commandLine, OverthereExecutionOutputHandler outputHandler, InputStream stream, Charset charset, CountDownLatch started, Map<String, String> mdcContext) {
+        this.streamName = streamName;
+        this.commandLine = commandLine;
+        this.outputHandler = chunkHandler(outputHandler);
+        this.stream = stream;
+        this.charset = charset;
+        this.started = started;
+        this.mdcContext = mdcContext;
+    }
+
+    synchronized void submitted() {
+        submitted = true;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (stopped) {
+                finished.countDown();
+                return;
+            }
+            runner = Thread.currentThread();
+        }
+
+        String previousName = runner.getName();
+        runner.setName(format("%s reader", streamName));
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        setMDCContext(mdcContext);
+        try {
+            pump();
+        } finally {
+            setMDCContext(previous);
+            synchronized (this) {
+                runner = null;
+            }
+            // clear an interrupt sent by stop() so that it does not leak into the next task of a pooled thread
+            Thread.interrupted();
+            Thread.currentThread().setName(previousName);
+            finished.countDown();
+        }
+    }
+
+    private void pump() {
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        started.countDown();
+        try {
+            for (;;) {
+                int read = stream.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                if (read < 0) {
+                    break;
+                }
+                bytes.position(bytes.position() + read);
+                bytes.flip();
+                decode(decoder, bytes, chars, false);
+                bytes.compact();
+            }
+            bytes.flip();
+            decode(decoder, bytes, chars, true);
+            while (decoder.flush(chars).isOverflow()) {
+                drain(chars);
+            }
+            drain(chars);
+        } catch (Exception exc) {
+            logger.error(format("An exception occured reading %s while executing [%s] on %s", streamName, commandLine, this), exc);
+        } finally {
+            closeQuietly(stream);
+            if (lineBuffer.length() > 0) {
+                outputHandler.handleLine(lineBuffer.toString());
+            }
+        }
+    }
+
+    private void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, boolean endOfInput) {
+        while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+            drain(chars);
+        }
+        drain(chars);
+    }
+
+    private void drain(CharBuffer chars) {
+        chars.flip();
+        if (chars.hasRemaining()) {
+            handleChars(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        }
+        chars.clear();
+    }
+
+    /**
+     * Passes a block of decoded characters to the handler, one chunk per line. The characters of every line are passed
+     * on before the line itself.
+     */
+    void handleChars(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int segmentStart = offset;
+        while (segmentStart < end) {
+            int newline = indexOf(chars, '\n', segmentStart, end);
+            int segmentEnd = newline < 0 ? end : newline + 1;
+            outputHandler.handleChars(chars, segmentStart, segmentEnd - segmentStart);
+            appendToLine(chars, segmentStart, newline < 0 ? end : newline);
+            if (newline >= 0) {
+                outputHandler.handleLine(lineBuffer.toString());
+                lineBuffer.setLength(0);
+            }
+            segmentStart = segmentEnd;
+        }
+    }
+
+    /**
+     * Appends the characters to the current line, leaving out carriage returns.
+     */
+    private void appendToLine(char[] chars, int start, int end) {
+        while (start < end) {
+            int carriageReturn = indexOf(chars, '\r', start, end);
+            int runEnd = carriageReturn < 0 ? end : carriageReturn;
+            lineBuffer.append(chars, start, runEnd - start);
+            start = runEnd + 1;
+        }
+    }
+
+    private static int indexOf(char[] chars, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Interrupts the pump in case it is stuck waiting for output that will never come, and waits for it to finish.
+     */
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+            if (!submitted) {
+                return;
+            }
+        }
+        try {
+            finished.await();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void setMDCContext(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format("%s pump for [%s]", streamName, commandLine);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputPump.class);
+
+}
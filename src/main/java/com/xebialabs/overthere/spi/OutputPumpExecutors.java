@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.spi;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.util.DaemonThreadFactory;
+
+/**
+ * The executors that run the stdout and stderr pumps of {@link BaseOverthereConnection#execute}.
+ */
+final class OutputPumpExecutors {
+
+    /**
+     * Maximum number of threads in the shared pool. Pumps that are started while all threads are busy get a dedicated
+     * thread, like they did before the pool existed.
+     */
+    static final int SHARED_POOL_MAX_THREADS = 256;
+
+    private static final long SHARED_POOL_KEEP_ALIVE_SECONDS = 60;
+
+    private OutputPumpExecutors() {
+        // should not instantiate
+    }
+
+    /**
+     * Returns the bounded pool of daemon threads that is shared by all connections.
+     */
+    static Executor shared() {
+        return SharedPool.INSTANCE;
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per pump, or the {@link #shared() shared pool} if the runtime
+     * does not support virtual threads.
+     */
+    static Executor virtualThreads() {
+        return VirtualThreads.INSTANCE != null ? VirtualThreads.INSTANCE : shared();
+    }
+
+    private static class SharedPool {
+        private static final Executor INSTANCE = createSharedPool();
+
+        private static Executor createSharedPool() {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(0, SHARED_POOL_MAX_THREADS, SHARED_POOL_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new DaemonThreadFactory("output pump"), new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    logger.debug("All {} output pump threads are busy, starting a dedicated thread", SHARED_POOL_MAX_THREADS);
+                    Thread t = new Thread(r, "output pump (dedicated)");
+                    t.setDaemon(true);
+                    t.start();
+                }
+            });
+            return pool;
+        }
+    }
+
+    private static class VirtualThreads {
+        private static final Executor INSTANCE = createVirtualThreadExecutor();
+
+        private static Executor createVirtualThreadExecutor() {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (Executor) factory.invoke(null);
+            } catch (NoSuchMethodException exc) {
+                logger.warn("Virtual threads are not supported by this Java runtime, using the shared output pump pool instead");
+                return null;
+            } catch (Exception exc) {
+                logger.warn("Cannot create a virtual thread executor, using the shared output pump pool instead", exc);
+                return null;
+            }
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputPumpExecutors.class);
+
+}
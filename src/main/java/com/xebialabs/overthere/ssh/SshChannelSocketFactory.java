@@ -0,0 +1,376 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketImpl;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.schmizz.sshj.common.Message;
+import net.schmizz.sshj.common.SSHException;
+import net.schmizz.sshj.common.SSHPacket;
+import net.schmizz.sshj.connection.Connection;
+import net.schmizz.sshj.connection.ConnectionException;
+import net.schmizz.sshj.connection.channel.direct.AbstractDirectChannel;
+import net.schmizz.sshj.transport.TransportException;
+
+import static java.lang.String.format;
+
+/**
+ * Creates sockets that are connected over an SSH <code>direct-tcpip</code> channel of a jumpstation instead of over the
+ * network, so that no local port has to be bound and forwarded.
+ * <p/>
+ * The host name of the address a socket is connected to is passed to the jumpstation as is, so it only has to be
+ * resolvable from the jumpstation. Writes are sent immediately, like on a TCP socket. The socket timeout applies to reads;
+ * other socket options are accepted but ignored.
+ */
+class SshChannelSocketFactory extends SocketFactory {
+
+    private final Connection connection;
+
+    SshChannelSocketFactory(Connection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return new ChannelSocket(new ChannelSocketImpl(connection));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connect(createSocket(), InetSocketAddress.createUnresolved(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connect(createSocket(), new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return createSocket(address, port);
+    }
+
+    private static Socket connect(Socket socket, InetSocketAddress address) throws IOException {
+        try {
+            socket.connect(address);
+            return socket;
+        } catch (IOException exc) {
+            socket.close();
+            throw exc;
+        }
+    }
+
+    private static class ChannelSocket extends Socket {
+        ChannelSocket(SocketImpl impl) throws SocketException {
+            super(impl);
+        }
+    }
+
+    /**
+     * The implementation behind a {@link ChannelSocket}. {@link Socket} keeps track of the connected, closed and shut down
+     * state and calls into this class for the actual I/O.
+     */
+    private static class ChannelSocketImpl extends SocketImpl {
+        private final Connection connection;
+        private DirectTcpipChannel channel;
+        private volatile int soTimeout;
+        private boolean inputShutdown;
+
+        ChannelSocketImpl(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        protected void create(boolean stream) throws IOException {
+            if (!stream) {
+                throw new SocketException("Cannot create a datagram socket over an SSH channel");
+            }
+        }
+
+        @Override
+        protected void connect(String host, int port) throws IOException {
+            connect(InetSocketAddress.createUnresolved(host, port), 0);
+        }
+
+        @Override
+        protected void connect(InetAddress address, int port) throws IOException {
+            connect(new InetSocketAddress(address, port), 0);
+        }
+
+        @Override
+        protected void connect(SocketAddress socketAddress, int timeout) throws IOException {
+            InetSocketAddress remote = (InetSocketAddress) socketAddress;
+            String host = remote.getHostString();
+            logger.debug("Opening direct-tcpip channel to {}:{}", host, remote.getPort());
+            DirectTcpipChannel c = new DirectTcpipChannel(connection, host, remote.getPort());
+            try {
+                c.open(timeout > 0 ? timeout : connection.getTimeoutMs());
+            } catch (ConnectionException exc) {
+                throw (ConnectException) new ConnectException(format("Cannot open a channel to %s:%d: %s", host, remote.getPort(), exc.getMessage())).initCause(exc);
+            }
+            this.channel = c;
+            this.address = remote.getAddress();
+            this.port = remote.getPort();
+        }
+
+        @Override
+        protected void bind(InetAddress host, int port) throws IOException {
+            this.localport = port;
+        }
+
+        @Override
+        protected void listen(int backlog) throws IOException {
+            throw new SocketException("Cannot listen on an SSH channel");
+        }
+
+        @Override
+        protected void accept(SocketImpl s) throws IOException {
+            throw new SocketException("Cannot accept on an SSH channel");
+        }
+
+        @Override
+        protected InputStream getInputStream() throws IOException {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (inputShutdown) {
+                        return -1;
+                    }
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (soTimeout > 0) {
+                        channel.awaitInput(soTimeout);
+                    }
+                    return channel.getInputStream().read(b, off, len);
+                }
+
+                @Override
+                public int available() throws IOException {
+                    return ChannelSocketImpl.this.available();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    ChannelSocketImpl.this.close();
+                }
+            };
+        }
+
+        @Override
+        protected OutputStream getOutputStream() throws IOException {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    channel.getOutputStream().write(b, off, len);
+                    channel.getOutputStream().flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    ChannelSocketImpl.this.close();
+                }
+            };
+        }
+
+        @Override
+        protected int available() throws IOException {
+            return inputShutdown ? 0 : channel.getInputStream().available();
+        }
+
+        @Override
+        protected void shutdownInput() throws IOException {
+            inputShutdown = true;
+        }
+
+        @Override
+        protected void shutdownOutput() throws IOException {
+            channel.sendEof();
+        }
+
+        @Override
+        protected void close() throws IOException {
+            if (channel != null) {
+                channel.sendCloseRequest();
+            }
+        }
+
+        @Override
+        protected void sendUrgentData(int data) throws IOException {
+            throw new SocketException("Cannot send urgent data over an SSH channel");
+        }
+
+        @Override
+        public void setOption(int optID, Object value) throws SocketException {
+            if (optID == SO_TIMEOUT) {
+                soTimeout = (Integer) value;
+            }
+        }
+
+        @Override
+        public Object getOption(int optID) throws SocketException {
+            switch (optID) {
+                case SO_TIMEOUT:
+                    return soTimeout;
+                case SO_BINDADDR:
+                    return InetAddress.getLoopbackAddress();
+                case TCP_NODELAY:
+                case SO_KEEPALIVE:
+                case SO_REUSEADDR:
+                case SO_OOBINLINE:
+                    return false;
+                case SO_LINGER:
+                    return -1;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    /**
+     * A <code>direct-tcpip</code> channel that can be opened with a timeout and whose readers can wait for input with one.
+     */
+    private static class DirectTcpipChannel extends AbstractDirectChannel {
+        private final String host;
+        private final int port;
+        private final Object inputLock = new Object();
+        private volatile boolean abandoned;
+
+        DirectTcpipChannel(Connection connection, String host, int port) {
+            super(connection, "direct-tcpip");
+            this.host = host;
+            this.port = port;
+        }
+
+        void open(long timeoutMillis) throws ConnectionException, TransportException {
+            trans.write(buildOpenReq());
+            try {
+                openEvent.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ConnectionException exc) {
+                abandoned = true;
+                if (openEvent.isSet()) {
+                    sendClose();
+                }
+                throw exc;
+            }
+        }
+
+        /**
+         * Waits until there is input to read, the end of the input has been reached or the channel has been closed.
+         */
+        void awaitInput(int timeoutMillis) throws IOException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            synchronized (inputLock) {
+                while (getInputStream().available() == 0 && !isEOF() && !closeEvent.isSet()) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+                    try {
+                        inputLock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        }
+
+        void sendEof() throws TransportException {
+            trans.write(newBuffer(Message.CHANNEL_EOF));
+        }
+
+        void sendCloseRequest() throws TransportException {
+            if (openEvent.isSet()) {
+                sendClose();
+            }
+        }
+
+        @Override
+        protected SSHPacket buildOpenReq() {
+            return super.buildOpenReq()
+                    .putString(host)
+                    .putUInt32(port)
+                    .putString("127.0.0.1")
+                    .putUInt32(0);
+        }
+
+        @Override
+        public void handle(Message msg, SSHPacket buf) throws ConnectionException, TransportException {
+            try {
+                super.handle(msg, buf);
+            } finally {
+                if (abandoned && msg == Message.CHANNEL_OPEN_CONFIRMATION) {
+                    sendClose();
+                }
+                signalInput();
+            }
+        }
+
+        @Override
+        public void notifyError(SSHException error) {
+            super.notifyError(error);
+            signalInput();
+        }
+
+        private void signalInput() {
+            synchronized (inputLock) {
+                inputLock.notifyAll();
+            }
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshChannelSocketFactory.class);
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.schmizz.sshj.common.Factory;
+import net.schmizz.sshj.transport.compression.Compression;
+import net.schmizz.sshj.transport.compression.DelayedZlibCompression;
+import net.schmizz.sshj.transport.compression.NoneCompression;
+import net.schmizz.sshj.transport.compression.ZlibCompression;
+
+/**
+ * Enumeration of the compression offered to the SSH server, in order of preference. When the server supports none of
+ * the compressing algorithms, the connection is not compressed.
+ */
+public enum SshCompression {
+
+    /**
+     * No compression.
+     */
+    NONE(Arrays.<Factory.Named<Compression>>asList(new NoneCompression.Factory())),
+
+    /**
+     * Compression from the start of the connection (<code>zlib</code>), or from after authentication
+     * (<code>zlib@openssh.com</code>) if the server only supports that.
+     */
+    ZLIB(Arrays.<Factory.Named<Compression>>asList(new ZlibCompression.Factory(), new DelayedZlibCompression.Factory(), new NoneCompression.Factory())),
+
+    /**
+     * Compression from after authentication only (<code>zlib@openssh.com</code>), so that nothing sent before the user
+     * has authenticated is compressed. This is what OpenSSH servers support by default.
+     */
+    DELAYED_ZLIB(Arrays.<Factory.Named<Compression>>asList(new DelayedZlibCompression.Factory(), new NoneCompression.Factory()));
+
+    private final List<Factory.Named<Compression>> factories;
+
+    private SshCompression(List<Factory.Named<Compression>> factories) {
+        this.factories = Collections.unmodifiableList(factories);
+    }
+
+    public List<Factory.Named<Compression>> getFactories() {
+        return factories;
+    }
+}
@@ -51,7 +51,9 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -70,6 +72,12 @@ abstract class SshConnection extends BaseOverthereConnection {
 
     public static final String NOCD_PSEUDO_COMMAND = "nocd";
 
+    /**
+     * The default value of <code>MaxSessions</code> in OpenSSH, i.e. the number of sessions that can be open on one
+     * connection at the same time.
+     */
+    static final int UPLOAD_PARALLELISM_MAX = 10;
+
     protected String protocolAndConnectionType;
 
     protected String host;
@@ -100,26 +108,56 @@ abstract class SshConnection extends BaseOverthereConnection {
 
     protected int heartbeatInterval;
 
+    protected boolean persistentShell;
+
+    protected SshCompression compression;
+
+    protected int uploadParallelism;
+
+    protected boolean tarDirectoryTransfer;
+
+    protected String tarCreateCommand;
+
+    protected String tarExtractCommand;
+
     protected SSHClient sshClient;
 
+    private SshPersistentShell shell;
+
     private static final Pattern ptyPattern = Pattern.compile(PTY_PATTERN);
 
-    private static final Config config = new DefaultConfig();
-    {
-        // PKCS5 is missing from 0.19.0 SSHJ config.
-        List<Factory.Named<FileKeyProvider>> current = config.getFileKeyProviderFactories();
-        current = new ArrayList<>(current);
-        current.add(new PKCS5KeyFile.Factory());
-        config.setFileKeyProviderFactories(current);
-    }
+    private static final Map<SshCompression, Config> configs = new EnumMap<SshCompression, Config>(SshCompression.class);
+
+    private static final SshKeyProviderCache keyProviderCache = new SshKeyProviderCache(64);
 
     protected Factory<SSHClient> sshClientFactory = new Factory<SSHClient>() {
         @Override
         public SSHClient create() {
-            return new SSHClient(config);
+            return new SSHClient(getConfig(compression));
         }
     };
 
+    /**
+     * @return the configuration for clients that offer the compression to the server. It is built once per compression,
+     *         because building it is expensive and because it is shared by all clients that are created with it.
+     */
+    private static Config getConfig(SshCompression compression) {
+        synchronized (configs) {
+            Config config = configs.get(compression);
+            if (config == null) {
+                config = new DefaultConfig();
+                // PKCS5 is missing from 0.19.0 SSHJ config.
+                List<Factory.Named<FileKeyProvider>> keyFileFactories = new ArrayList<>(config.getFileKeyProviderFactories());
+                keyFileFactories.add(new PKCS5KeyFile.Factory());
+                config.setFileKeyProviderFactories(keyFileFactories);
+                config.setKeepAliveProvider(KeepAliveProvider.KEEP_ALIVE);
+                config.setCompressionFactories(compression.getFactories());
+                configs.put(compression, config);
+            }
+            return config;
+        }
+    }
+
     public SshConnection(final String protocol, final ConnectionOptions options, final AddressPortMapper mapper) {
         super(protocol, options, mapper, true);
         SshConnectionType connectionType = options.getOptionalEnum(CONNECTION_TYPE, SshConnectionType.class);
@@ -148,12 +186,23 @@ abstract class SshConnection extends BaseOverthereConnection {
         }
         allocatePty = options.getOptional(ALLOCATE_PTY);
         openShellBeforeExecute = options.getBoolean(OPEN_SHELL_BEFORE_EXECUTE, OPEN_SHELL_BEFORE_EXECUTE_DEFAULT);
+        persistentShell = options.getBoolean(PERSISTENT_SHELL, PERSISTENT_SHELL_DEFAULT);
+        compression = options.getEnum(COMPRESSION, SshCompression.class, COMPRESSION_DEFAULT);
+        uploadParallelism = options.getInteger(UPLOAD_PARALLELISM, UPLOAD_PARALLELISM_DEFAULT);
+        checkArgument(uploadParallelism >= 1, "Value for %s must be at least 1", UPLOAD_PARALLELISM);
+        if (uploadParallelism > UPLOAD_PARALLELISM_MAX) {
+            logger.warn("Value {} for {} exceeds the number of sessions that an SSH server allows per connection by default, using {} instead",
+                    uploadParallelism, UPLOAD_PARALLELISM, UPLOAD_PARALLELISM_MAX);
+            uploadParallelism = UPLOAD_PARALLELISM_MAX;
+        }
+        tarDirectoryTransfer = options.getBoolean(TAR_DIRECTORY_TRANSFER, TAR_DIRECTORY_TRANSFER_DEFAULT);
+        tarCreateCommand = options.get(TAR_CREATE_COMMAND, TAR_CREATE_COMMAND_DEFAULT);
+        tarExtractCommand = options.get(TAR_EXTRACT_COMMAND, TAR_EXTRACT_COMMAND_DEFAULT);
     }
 
     protected void connect() {
         try {
-            config.setKeepAliveProvider(KeepAliveProvider.KEEP_ALIVE);
-            SSHClient client = sshClientFactory.create();
+            final SSHClient client = sshClientFactory.create();
             client.setSocketFactory(mapper.socketFactory());
             client.setConnectTimeout(connectionTimeoutMillis);
             client.addHostKeyVerifier(new PromiscuousVerifier());
@@ -177,22 +226,24 @@ abstract class SshConnection extends BaseOverthereConnection {
             KeyProvider keys;
             if (privateKey != null) {
                 try {
-                    if (passphrase == null) {
-                        keys = client.loadKeys(privateKey, null, null);
-                    } else {
-                        keys = client.loadKeys(privateKey, null, getPassphraseFinder());
-                    }
+                    keys = keyProviderCache.get(SshKeyProviderCache.keyForPrivateKey(privateKey, passphrase), new SshKeyProviderCache.Loader() {
+                        @Override
+                        public KeyProvider load() throws IOException {
+                            return client.loadKeys(privateKey, null, passphrase == null ? null : getPassphraseFinder());
+                        }
+                    });
                 } catch (IOException e) {
                     throw new RuntimeIOException("The supplied key is not in a recognized format", e);
                 }
                 client.authPublickey(username, keys);
             } else if (privateKeyFile != null) {
                 try {
-                    if (passphrase == null) {
-                        keys = client.loadKeys(privateKeyFile);
-                    } else {
-                        keys = client.loadKeys(privateKeyFile, getPassphraseFinder());
-                    }
+                    keys = keyProviderCache.get(SshKeyProviderCache.keyForPrivateKeyFile(privateKeyFile, passphrase), new SshKeyProviderCache.Loader() {
+                        @Override
+                        public KeyProvider load() throws IOException {
+                            return client.loadKeys(privateKeyFile, passphrase == null ? null : getPassphraseFinder());
+                        }
+                    });
                 } catch (IOException e) {
                     throw new RuntimeIOException("Cannot read key from private key file " + privateKeyFile, e);
                 }
@@ -251,6 +302,7 @@ abstract class SshConnection extends BaseOverthereConnection {
     @Override
     public void doClose() {
         if (sshClient == null) return;
+        closePersistentShell();
         try {
             sshClient.disconnect();
         } catch (Exception e) {
@@ -261,6 +313,11 @@ abstract class SshConnection extends BaseOverthereConnection {
         }
     }
 
+    @Override
+    public boolean isConnected() {
+        return super.isConnected() && sshClient != null && sshClient.isConnected() && sshClient.isAuthenticated();
+    }
+
     protected SSHClient getSshClient() {
         checkState(sshClient != null, "Not (yet) connected");
         return sshClient;
@@ -338,6 +395,65 @@ abstract class SshConnection extends BaseOverthereConnection {
 
     }
 
+    /**
+     * Executes commands that do not need stdin in the {@link SshPersistentShell persistent shell} when the
+     * {@link SshConnectionBuilder#PERSISTENT_SHELL persistentShell} option is set. Commands are started in a new session
+     * if the shell cannot be used or is already executing another command.
+     */
+    @Override
+    protected OverthereProcess startProcessForExecute(final CmdLine origCmd) {
+        checkNotNull(origCmd, "Cannot execute null command line");
+        checkArgument(origCmd.getArguments().size() > 0, "Cannot execute empty command line");
+
+        SshPersistentShell s = canExecuteInPersistentShell() ? acquirePersistentShell() : null;
+        if (s == null) {
+            return startProcess(origCmd);
+        }
+
+        final CmdLine cmd = processCommandLine(origCmd);
+        final String obfuscatedCmd = origCmd.toCommandLine(os, true);
+        logger.info("Starting command [{}] on [{}]", obfuscatedCmd, this);
+        return s.start(cmd.toCommandLine(os, false), obfuscatedCmd);
+    }
+
+    /**
+     * @return whether commands can be executed in a persistent shell. That requires a Unix host and no PTY, because
+     *         the output of a command is separated from the output of the next one by sentinels on stdout and stderr.
+     */
+    protected boolean canExecuteInPersistentShell() {
+        return persistentShell && os == OperatingSystemFamily.UNIX && (allocatePty == null || allocatePty.isEmpty()) && !allocateDefaultPty;
+    }
+
+    /**
+     * @return whether directories are copied as a tar stream. That needs a Unix host and no pty, because a pty would
+     *         mangle the binary stream.
+     */
+    protected boolean canTransferAsTar() {
+        return tarDirectoryTransfer && os == OperatingSystemFamily.UNIX && (allocatePty == null || allocatePty.isEmpty()) && !allocateDefaultPty;
+    }
+
+    private synchronized SshPersistentShell acquirePersistentShell() {
+        if (shell != null && !shell.isUsable()) {
+            closePersistentShell();
+        }
+        if (shell == null) {
+            try {
+                shell = new SshPersistentShell(this, getSshClient());
+            } catch (IOException exc) {
+                logger.warn("Cannot start persistent shell on " + this + ", starting command in a new session", exc);
+                return null;
+            }
+        }
+        return shell.tryAcquire() ? shell : null;
+    }
+
+    private synchronized void closePersistentShell() {
+        if (shell != null) {
+            shell.close();
+            shell = null;
+        }
+    }
+
     protected CmdLine processCommandLine(final CmdLine cmd) {
         CmdLine processedCmd;
         logger.trace("Checking whether to prefix command line with cd: {}", cmd);
@@ -72,6 +72,26 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final int HEARTBEAT_INTERVAL_DEFAULT = 0;
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#jumpstations_channelSockets">the online documentation</a>
+     */
+    public static final String CHANNEL_SOCKETS = "channelSockets";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#jumpstations_channelSockets">the online documentation</a>
+     */
+    public static final boolean CHANNEL_SOCKETS_DEFAULT = false;
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_compression">the online documentation</a>
+     */
+    public static final String COMPRESSION = "compression";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_compression">the online documentation</a>
+     */
+    public static final SshCompression COMPRESSION_DEFAULT = SshCompression.NONE;
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_connectionType">the online documentation</a>
      */
@@ -107,6 +127,16 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final String DELETE_RECURSIVELY_COMMAND_DEFAULT = "rm -rf {0}";
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_fileInfoCacheTtlMillis">the online documentation</a>
+     */
+    public static final String FILE_INFO_CACHE_TTL_MILLIS = "fileInfoCacheTtlMillis";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_fileInfoCacheTtlMillis">the online documentation</a>
+     */
+    public static final int FILE_INFO_CACHE_TTL_MILLIS_DEFAULT = 0;
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_getFileInfoCommand">the online documentation</a>
      */
@@ -139,6 +169,16 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final String LIST_FILES_COMMAND_DEFAULT = "ls -a1 {0}";
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_listFilesWithAttributesCommand">the online documentation</a>
+     */
+    public static final String LIST_FILES_WITH_ATTRIBUTES_COMMAND = "listFilesWithAttributesCommand";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_listFilesWithAttributesCommand">the online documentation</a>
+     */
+    public static final String LIST_FILES_WITH_ATTRIBUTES_COMMAND_DEFAULT = "ls -laL {0}";
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_mkdirCommand">the online documentation</a>
      */
@@ -169,6 +209,16 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final boolean OPEN_SHELL_BEFORE_EXECUTE_DEFAULT = false;
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_persistentShell">the online documentation</a>
+     */
+    public static final String PERSISTENT_SHELL = "persistentShell";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_persistentShell">the online documentation</a>
+     */
+    public static final boolean PERSISTENT_SHELL_DEFAULT = false;
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_passphrase">the online documentation</a>
      */
@@ -194,6 +244,16 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final int PORT_ALLOCATION_RANGE_START_DEFAULT = 1024;
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#jumpstations_portForwardingThreads">the online documentation</a>
+     */
+    public static final String PORT_FORWARDING_THREADS = "portForwardingThreads";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#jumpstations_portForwardingThreads">the online documentation</a>
+     */
+    public static final int PORT_FORWARDING_THREADS_DEFAULT = 0;
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_renameToCommand">the online documentation</a>
      */
@@ -224,6 +284,86 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final String SET_NOT_EXECUTABLE_COMMAND_DEFAULT = "chmod a-x {0}";
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sftpMaxIdleChannels">the online documentation</a>
+     */
+    public static final String SFTP_MAX_IDLE_CHANNELS = "sftpMaxIdleChannels";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sftpMaxIdleChannels">the online documentation</a>
+     */
+    public static final int SFTP_MAX_IDLE_CHANNELS_DEFAULT = 4;
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sftpMaxOutstandingRequests">the online documentation</a>
+     */
+    public static final String SFTP_MAX_OUTSTANDING_REQUESTS = "sftpMaxOutstandingRequests";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sftpMaxOutstandingRequests">the online documentation</a>
+     */
+    public static final int SFTP_MAX_OUTSTANDING_REQUESTS_DEFAULT = 16;
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sftpRequestSize">the online documentation</a>
+     */
+    public static final String SFTP_REQUEST_SIZE = "sftpRequestSize";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sftpRequestSize">the online documentation</a>
+     */
+    public static final int SFTP_REQUEST_SIZE_DEFAULT = 32768;
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_tarDirectoryTransfer">the online documentation</a>
+     */
+    public static final String TAR_DIRECTORY_TRANSFER = "tarDirectoryTransfer";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_tarDirectoryTransfer">the online documentation</a>
+     */
+    public static final boolean TAR_DIRECTORY_TRANSFER_DEFAULT = false;
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_tarCreateCommand">the online documentation</a>
+     */
+    public static final String TAR_CREATE_COMMAND = "tarCreateCommand";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_tarCreateCommand">the online documentation</a>
+     */
+    public static final String TAR_CREATE_COMMAND_DEFAULT = "tar chf - -C {0} .";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_tarExtractCommand">the online documentation</a>
+     */
+    public static final String TAR_EXTRACT_COMMAND = "tarExtractCommand";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_tarExtractCommand">the online documentation</a>
+     */
+    public static final String TAR_EXTRACT_COMMAND_DEFAULT = "tar xf - -C {0}";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_uploadParallelism">the online documentation</a>
+     */
+    public static final String UPLOAD_PARALLELISM = "uploadParallelism";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_uploadParallelism">the online documentation</a>
+     */
+    public static final int UPLOAD_PARALLELISM_DEFAULT = 1;
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_writeFileCommand">the online documentation</a>
+     */
+    public static final String WRITE_FILE_COMMAND = "writeFileCommand";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_writeFileCommand">the online documentation</a>
+     */
+    public static final String WRITE_FILE_COMMAND_DEFAULT = "";
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_suCommandPrefix">the online documentation</a>
      */
@@ -299,6 +439,16 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final String SU_PASSWORD_PROMPT_REGEX_DEFAULT = ".*[Pp]assword.*:";
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_suPasswordPromptScanLimit">the online documentation</a>
+     */
+    public static final String SU_PASSWORD_PROMPT_SCAN_LIMIT = "suPasswordPromptScanLimit";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_suPasswordPromptScanLimit">the online documentation</a>
+     */
+    public static final int SU_PASSWORD_PROMPT_SCAN_LIMIT_DEFAULT = 8192;
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_suPreserveAttributesOnCopyFromTempFile">the online documentation</a>
      */
@@ -424,6 +574,16 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final String SUDO_PASSWORD_PROMPT_REGEX_DEFAULT = ".*[Pp]assword.*:";
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoPasswordPromptScanLimit">the online documentation</a>
+     */
+    public static final String SUDO_PASSWORD_PROMPT_SCAN_LIMIT = "sudoPasswordPromptScanLimit";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoPasswordPromptScanLimit">the online documentation</a>
+     */
+    public static final int SUDO_PASSWORD_PROMPT_SCAN_LIMIT_DEFAULT = 8192;
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoPreserveAttributesOnCopyFromTempFile">the online documentation</a>
      */
@@ -454,6 +614,36 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final boolean SUDO_QUOTE_COMMAND_DEFAULT = false;
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoReadFileCommand">the online documentation</a>
+     */
+    public static final String SUDO_READ_FILE_COMMAND = "sudoReadFileCommand";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoReadFileCommand">the online documentation</a>
+     */
+    public static final String SUDO_READ_FILE_COMMAND_DEFAULT = "cat {0}";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoStreamReads">the online documentation</a>
+     */
+    public static final String SUDO_STREAM_READS = "sudoStreamReads";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoStreamReads">the online documentation</a>
+     */
+    public static final boolean SUDO_STREAM_READS_DEFAULT = false;
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoStreamWrites">the online documentation</a>
+     */
+    public static final String SUDO_STREAM_WRITES = "sudoStreamWrites";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoStreamWrites">the online documentation</a>
+     */
+    public static final boolean SUDO_STREAM_WRITES_DEFAULT = false;
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoTempMkdirCommand">the online documentation</a>
      */
@@ -479,6 +669,16 @@ public class SshConnectionBuilder implements OverthereConnectionBuilder {
      */
     public static final String SUDO_USERNAME = "sudoUsername";
 
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoWriteFileCommand">the online documentation</a>
+     */
+    public static final String SUDO_WRITE_FILE_COMMAND = "sudoWriteFileCommand";
+
+    /**
+     * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_sudoWriteFileCommand">the online documentation</a>
+     */
+    public static final String SUDO_WRITE_FILE_COMMAND_DEFAULT = "dd of={0} bs=64k";
+
     /**
      * See <a href="https://github.com/xebialabs/overthere/blob/master/README.md#ssh_localAddress">the online
      * documentation</a>
@@ -26,36 +26,60 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Detects password prompts in the output stream and sends the password in response.
+ * <p/>
+ * Only the first <code>scanLimit</code> bytes of the output, and the first <code>scanLimit</code> bytes after each
+ * answered prompt, are scanned, so that a repeated prompt after a wrong password is still answered but the bulk of the
+ * output passes through untouched. Prompts are matched against a window of at most {@link #WINDOW_SIZE} characters of
+ * the current line.
  */
 class SshElevatedPasswordHandlingStream extends FilterInputStream {
+
+    static final int WINDOW_SIZE = 512;
+
     private final OutputStream remoteStdin;
     private final byte[] passwordBytes;
-    private final String passwordRegex;
-    private final Pattern passwordPattern;
+    private final char lastPromptChar;
+    private final Matcher passwordMatcher;
+    private final long scanLimit;
 
-    private final StringBuilder receivedOutputBuffer = new StringBuilder();
+    private final char[] window = new char[WINDOW_SIZE];
+    private final CharBuffer windowChars = CharBuffer.wrap(window);
+    private int windowLength;
 
-    private boolean sentPassword = false;
+    private long scanRemaining;
 
     protected SshElevatedPasswordHandlingStream(InputStream remoteStdout, OutputStream remoteStdin, String password, String passwordPromptRegex) {
+        this(remoteStdout, remoteStdin, password, passwordPromptRegex, 0);
+    }
+
+    /**
+     * @param scanLimit the number of bytes to scan for a prompt at the start of the output and after each answered prompt,
+     *                  or 0 to scan all output.
+     */
+    protected SshElevatedPasswordHandlingStream(InputStream remoteStdout, OutputStream remoteStdin, String password, String passwordPromptRegex, long scanLimit) {
         super(remoteStdout);
         this.remoteStdin = remoteStdin;
         this.passwordBytes = (password + "\r\n").getBytes();
 
-        this.passwordRegex = passwordPromptRegex;
-        this.passwordPattern = Pattern.compile(passwordRegex);
+        this.lastPromptChar = passwordPromptRegex.charAt(passwordPromptRegex.length() - 1);
+        this.passwordMatcher = Pattern.compile(passwordPromptRegex).matcher("");
+        this.scanLimit = scanLimit > 0 ? scanLimit : Long.MAX_VALUE;
+        this.scanRemaining = this.scanLimit;
     }
 
     @Override
     public int read() throws IOException {
         int readInt = super.read();
-        if (readInt > -1) {
+        if (readInt > -1 && scanRemaining > 0) {
+            scanRemaining--;
             handleChar((char) readInt);
         }
         return readInt;
@@ -64,38 +88,54 @@ class SshElevatedPasswordHandlingStream extends FilterInputStream {
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
         int numBytesRead = super.read(b, off, len);
-        if (numBytesRead > -1) {
-            for (int i = 0; i < numBytesRead; i++) {
-                handleChar((char) b[off + i]);
+        if (numBytesRead > 0 && scanRemaining > 0) {
+            for (int i = off; i < off + numBytesRead && scanRemaining > 0; i++) {
+                scanRemaining--;
+                handleChar((char) b[i]);
+            }
+            if (scanRemaining == 0) {
+                logger.trace("Stopped scanning for password prompts after {} bytes", scanLimit);
             }
         }
         return numBytesRead;
     }
 
+    boolean isScanning() {
+        return scanRemaining > 0;
+    }
+
     private void handleChar(char c) {
-//        if (!sentPassword) {
-            logger.trace("Received: {}", c);
-            if (c == '\n') {
-                receivedOutputBuffer.setLength(0);
-            } else {
-                receivedOutputBuffer.append(c);
-
-                if (c == passwordRegex.charAt(passwordRegex.length() - 1)) {
-                    String receivedOutput = receivedOutputBuffer.toString();
-                    if (passwordPattern.matcher(receivedOutput).matches()) {
-                        logger.info("Found password prompt in output: {}", receivedOutput);
-                        sentPassword = true;
-                        try {
-                            remoteStdin.write(passwordBytes);
-                            remoteStdin.flush();
-                            logger.debug("Sent password");
-                        } catch (IOException exc) {
-                            logger.error("Cannot send password", exc);
-                        }
-                    }
-                }
+        if (c == '\n') {
+            windowLength = 0;
+            return;
+        }
+
+        if (windowLength == WINDOW_SIZE) {
+            // keep the end of a long line, that is where a prompt would be
+            System.arraycopy(window, WINDOW_SIZE / 2, window, 0, WINDOW_SIZE / 2);
+            windowLength = WINDOW_SIZE / 2;
+        }
+        window[windowLength++] = c;
+
+        if (c == lastPromptChar) {
+            windowChars.limit(windowLength).position(0);
+            if (passwordMatcher.reset(windowChars).matches()) {
+                logger.info("Found password prompt in output: {}", windowChars);
+                sendPassword();
             }
-//        }
+        }
+    }
+
+    private void sendPassword() {
+        windowLength = 0;
+        scanRemaining = scanLimit;
+        try {
+            remoteStdin.write(passwordBytes);
+            remoteStdin.flush();
+            logger.debug("Sent password");
+        } catch (IOException exc) {
+            logger.error("Cannot send password", exc);
+        }
     }
 
     private static Logger logger = LoggerFactory.getLogger(SshElevatedPasswordHandlingStream.class);
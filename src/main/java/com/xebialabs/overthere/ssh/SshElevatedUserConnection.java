@@ -37,6 +37,9 @@ import net.schmizz.sshj.connection.ConnectionException;
 import net.schmizz.sshj.connection.channel.direct.Session;
 import net.schmizz.sshj.transport.TransportException;
 
+import static com.xebialabs.overthere.OperatingSystemFamily.UNIX;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.FILE_INFO_CACHE_TTL_MILLIS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.FILE_INFO_CACHE_TTL_MILLIS_DEFAULT;
 import static com.xebialabs.overthere.util.OverthereUtils.checkArgument;
 import static com.xebialabs.overthere.util.OverthereUtils.constructPath;
 
@@ -50,19 +53,30 @@ abstract class SshElevatedUserConnection extends SshScpConnection {
     protected String elevatedUsername;
     protected String elevatedPassword;
     protected String elevatedPasswordPromptRegex;
+    protected int elevatedPasswordPromptScanLimit;
     protected String elevationCommandPrefix;
     protected boolean quoteCommand;
     protected boolean preserveAttributesOnCopyFromTempFile;
     protected boolean preserveAttributesOnCopyToTempFile;
     protected boolean overrideUmask;
+    protected boolean streamReads;
+    protected boolean streamWrites;
     protected String copyFromTempFileCommand;
     protected String copyToTempFileCommand;
     protected String overrideUmaskCommand;
+    protected String elevatedReadFileCommand;
+    protected String elevatedWriteFileCommand;
     protected String tempMkdirCommand;
     protected String tempMkdirsCommand;
 
+    /**
+     * Information about temporary files is retrieved without elevation, so it is cached separately.
+     */
+    protected SshFileInfoCache<SshScpFile.LsResults> tempFileInfoCache;
+
     protected SshElevatedUserConnection(final String type, final ConnectionOptions options, final AddressPortMapper mapper) {
         super(type, options, mapper);
+        tempFileInfoCache = new SshFileInfoCache<SshScpFile.LsResults>(options.getInteger(FILE_INFO_CACHE_TTL_MILLIS, FILE_INFO_CACHE_TTL_MILLIS_DEFAULT), os.getFileSeparator());
     }
 
     protected static void checkElevatedPasswordPromptRegex(final SshElevatedUserConnection connection, final String optionKey, final Logger logger) {
@@ -75,6 +89,18 @@ abstract class SshElevatedUserConnection extends SshScpConnection {
         }
     }
 
+    @Override
+    protected boolean canExecuteInPersistentShell() {
+        // The password prompt can only be answered on the stdin of the process
+        return elevatedPasswordPromptRegex == null && super.canExecuteInPersistentShell();
+    }
+
+    @Override
+    protected boolean canTransferAsTar() {
+        // The password would be written into the tar stream on stdin and looked for in the tar stream on stdout
+        return elevatedPasswordPromptRegex == null && super.canTransferAsTar();
+    }
+
     @Override
     protected SshProcess createProcess(final Session session, final CmdLine commandLine) throws TransportException, ConnectionException {
         if (elevatedPasswordPromptRegex == null) {
@@ -83,7 +109,7 @@ abstract class SshElevatedUserConnection extends SshScpConnection {
             return new SshProcess(this, os, session, commandLine) {
                 @Override
                 public InputStream getStdout() {
-                    return new SshElevatedPasswordHandlingStream(super.getStdout(), getStdin(), elevatedPassword, elevatedPasswordPromptRegex);
+                    return new SshElevatedPasswordHandlingStream(super.getStdout(), getStdin(), elevatedPassword, elevatedPasswordPromptRegex, elevatedPasswordPromptScanLimit);
                 }
             };
         }
@@ -118,6 +144,29 @@ abstract class SshElevatedUserConnection extends SshScpConnection {
         return processedCmd;
     }
 
+    /**
+     * @return whether files can be read from the stdout of an elevated <code>elevatedReadFileCommand</code>.
+     */
+    protected boolean canStreamReads() {
+        return streamReads && canStreamFileContents();
+    }
+
+    /**
+     * @return whether files can be written to the stdin of an elevated <code>elevatedWriteFileCommand</code>.
+     */
+    protected boolean canStreamWrites() {
+        return streamWrites && canStreamFileContents();
+    }
+
+    /**
+     * Streaming the contents of a file through an elevated command requires a Unix host and no PTY, because a PTY would
+     * translate the bytes of the file. It also requires that no password prompt is answered, because the password is
+     * written to the same stdin as the contents of the file and the prompt is looked for in the same stdout.
+     */
+    private boolean canStreamFileContents() {
+        return os == UNIX && (allocatePty == null || allocatePty.isEmpty()) && !allocateDefaultPty && elevatedPasswordPromptRegex == null;
+    }
+
     CmdLine prefixWithElevationCommand(final CmdLine commandLine) {
         CmdLine commandLineWithSudo = new CmdLine();
         if (quoteCommand) {
@@ -141,6 +190,12 @@ abstract class SshElevatedUserConnection extends SshScpConnection {
         return commandLineWithSudo;
     }
 
+    @Override
+    void invalidateFileInfo(String path) {
+        super.invalidateFileInfo(path);
+        tempFileInfoCache.invalidate(path);
+    }
+
     @Override
     public OverthereFile getFile(String hostPath) throws RuntimeIOException {
         return new SshElevatedUserFile(this, hostPath, false);
@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import com.xebialabs.overthere.CmdLine;
 import com.xebialabs.overthere.OverthereExecutionOutputHandler;
 import com.xebialabs.overthere.OverthereFile;
+import com.xebialabs.overthere.OverthereProcess;
 import com.xebialabs.overthere.RuntimeIOException;
 import com.xebialabs.overthere.util.CapturingOverthereExecutionOutputHandler;
 
@@ -41,6 +42,8 @@ import static com.xebialabs.overthere.util.CapturingOverthereExecutionOutputHand
 import static com.xebialabs.overthere.util.LoggingOverthereExecutionOutputHandler.loggingErrorHandler;
 import static com.xebialabs.overthere.util.LoggingOverthereExecutionOutputHandler.loggingOutputHandler;
 import static com.xebialabs.overthere.util.MultipleOverthereExecutionOutputHandler.multiHandler;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static com.xebialabs.overthere.util.OverthereUtils.write;
 
 /**
  * A file on a host connected through SSH w/ SU, SUDO or INTERACTIVE_SUDO.
@@ -70,6 +73,14 @@ class SshElevatedUserFile extends SshScpFile {
         return super.executeCommand(outHandler, errHandler, commandLine);
     }
 
+    @Override
+    protected OverthereProcess startProcess(CmdLine commandLine) {
+        if (isTempFile) {
+            commandLine = SshConnection.prefixWithPseudoCommand(commandLine, NOELEVATION_PSEUDO_COMMAND);
+        }
+        return super.startProcess(commandLine);
+    }
+
     @Override
     public OverthereFile getFile(String name) {
         SshElevatedUserFile f = (SshElevatedUserFile) super.getFile(name);
@@ -84,10 +95,20 @@ class SshElevatedUserFile extends SshScpFile {
         return f;
     }
 
+    @Override
+    protected SshFileInfoCache<LsResults> getFileInfoCache() {
+        return isTempFile ? ((SshElevatedUserConnection) connection).tempFileInfoCache : super.getFileInfoCache();
+    }
+
     @Override
     public InputStream getInputStream() throws RuntimeIOException {
+        SshElevatedUserConnection elevatedConnection = (SshElevatedUserConnection) connection;
         if (isTempFile) {
             return super.getInputStream();
+        } else if (elevatedConnection.canStreamReads()) {
+            logger.debug("Opening {} streaming input stream to read from file {}", connection.protocolAndConnectionType, this);
+            CmdLine readCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(elevatedConnection.elevatedReadFileCommand, getPath());
+            return asBuffered(new SshProcessInputStream(startProcess(readCmdLine), toString(), connection.getOutputPumpExecutor()));
         } else {
             OverthereFile tempFile = connection.getTempFile(getName());
             copyToTempFile(tempFile);
@@ -99,12 +120,30 @@ class SshElevatedUserFile extends SshScpFile {
     public OutputStream getOutputStream() throws RuntimeIOException {
         if (isTempFile) {
             return super.getOutputStream();
+        } else if (((SshElevatedUserConnection) connection).canStreamWrites()) {
+            logger.debug("Opening {} streaming output stream to write to file {}", connection.protocolAndConnectionType, this);
+            return asBuffered(getStreamingOutputStream());
         } else {
             logger.debug("Opening {} output stream to write to file {}", connection.protocolAndConnectionType, this);
             return new SshElevatedUserOutputStream(this, connection.getTempFile(getName()));
         }
     }
 
+    private OutputStream getStreamingOutputStream() {
+        CmdLine writeCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(((SshElevatedUserConnection) connection).elevatedWriteFileCommand, getPath());
+        invalidateFileInfo();
+        return new SshProcessOutputStream(startProcess(writeCmdLine), toString(), connection.getOutputPumpExecutor()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    invalidateFileInfo();
+                }
+            }
+        };
+    }
+
     @Override
     public void mkdir() throws RuntimeIOException {
         if (isTempFile) {
@@ -130,6 +169,9 @@ class SshElevatedUserFile extends SshScpFile {
         if (isTempFile) {
             super.copyFrom(source);
             overrideUmask(this);
+        } else if (canStreamCopyFrom(source)) {
+            logger.debug("Copying file {} to {} through a streaming elevated command", source, this);
+            streamFrom(source);
         } else {
             logger.debug("Copying file or directory {} to {}", source, this);
             OverthereFile tempFile = getConnection().getTempFile(getName());
@@ -143,6 +185,31 @@ class SshElevatedUserFile extends SshScpFile {
         }
     }
 
+    /**
+     * Only the copy through the temporary directory can preserve the attributes of the source, so that is still used when
+     * <code>preserveAttributesOnCopyFromTempFile</code> is set.
+     */
+    private boolean canStreamCopyFrom(OverthereFile source) {
+        SshElevatedUserConnection elevatedConnection = (SshElevatedUserConnection) connection;
+        return elevatedConnection.canStreamWrites() && !elevatedConnection.preserveAttributesOnCopyFromTempFile && source.isFile();
+    }
+
+    private void streamFrom(OverthereFile source) {
+        InputStream in = source.getInputStream();
+        try {
+            OutputStream out = asBuffered(getStreamingOutputStream());
+            try {
+                write(in, out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException exc) {
+            throw new RuntimeIOException("Cannot copy " + source + " to " + this, exc);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
     @Override
     protected CmdLine postProcessShortCircuitCopyCommand(CmdLine cmdLine) {
         if(isTempFile) {
@@ -159,6 +226,7 @@ class SshElevatedUserFile extends SshScpFile {
             CmdLine chmodCmdLine = CmdLine.build(NOELEVATION_PSEUDO_COMMAND, NOCD_PSEUDO_COMMAND)
                     .addTemplatedFragment(((SshElevatedUserConnection) connection).overrideUmaskCommand, remoteFile.getPath());
 
+            connection.invalidateFileInfo(remoteFile.getPath());
             CapturingOverthereExecutionOutputHandler capturedOutput = capturingHandler();
             int errno = connection.execute(loggingOutputHandler(logger), multiHandler(loggingErrorHandler(logger), capturedOutput), chmodCmdLine);
             if (errno != 0) {
@@ -169,6 +237,7 @@ class SshElevatedUserFile extends SshScpFile {
 
     void copyToTempFile(OverthereFile tempFile) {
         logger.debug("Copying actual file {} to temporary file {} before download", this, tempFile);
+        connection.invalidateFileInfo(tempFile.getPath());
 
         CmdLine cpCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND)
                 .addTemplatedFragment(((SshElevatedUserConnection) connection).copyToTempFileCommand, this.getPath(), tempFile.getPath());
@@ -204,7 +273,12 @@ class SshElevatedUserFile extends SshScpFile {
                 .addTemplatedFragment(((SshElevatedUserConnection) connection).copyFromTempFileCommand, tempFile.getPath(), targetPath);
 
         CapturingOverthereExecutionOutputHandler cpCapturedOutput = capturingHandler();
-        int cpResult = getConnection().execute(multiHandler(loggingOutputHandler(logger), cpCapturedOutput), multiHandler(loggingErrorHandler(logger), cpCapturedOutput), cpCmdLine);
+        int cpResult;
+        try {
+            cpResult = getConnection().execute(multiHandler(loggingOutputHandler(logger), cpCapturedOutput), multiHandler(loggingErrorHandler(logger), cpCapturedOutput), cpCmdLine);
+        } finally {
+            invalidateFileInfo();
+        }
 
         if (cpResult != 0) {
             String errorMessage = cpCapturedOutput.getOutput();
@@ -108,6 +108,32 @@ abstract class SshFile<C extends SshConnection> extends BaseOverthereFile<C> {
         return connection.execute(outHandler, errHandler, commandLine);
     }
 
+    protected OverthereProcess startProcess(CmdLine commandLine) {
+        return connection.startProcess(commandLine);
+    }
+
+    /**
+     * Uploads a source directory with a single remote <code>tar</code> process if the connection is configured to do so.
+     *
+     * @return <code>true</code> if the directory has been uploaded, <code>false</code> if it has to be copied otherwise.
+     */
+    protected boolean uploadAsTar(OverthereFile source) {
+        if (!connection.canTransferAsTar() || !source.isDirectory()) {
+            return false;
+        }
+        SshTarTransfer.upload(source, this);
+        return true;
+    }
+
+    @Override
+    protected boolean transmitTo(OverthereFile dest) {
+        if (!connection.canTransferAsTar() || !isDirectory()) {
+            return false;
+        }
+        SshTarTransfer.download(this, dest);
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof SshFile)) {
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches information about remote files by path for a limited time, so that consecutive calls like
+ * <code>exists()</code>, <code>isDirectory()</code> and <code>length()</code> on the same path do not each need a round
+ * trip to the host. A time-to-live of <code>0</code> disables the cache.
+ *
+ * @param <V> the type of information cached.
+ */
+class SshFileInfoCache<V> {
+
+    private final long ttlNanos;
+
+    private final String fileSeparator;
+
+    private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<String, Entry<V>>();
+
+    SshFileInfoCache(long ttlMillis, String fileSeparator) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.fileSeparator = fileSeparator;
+    }
+
+    boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    /**
+     * @return the cached information for the path, or <code>null</code> if there is none or if it has expired.
+     */
+    V get(String path) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry<V> entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.created >= ttlNanos) {
+            entries.remove(path, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    void put(String path, V value) {
+        if (isEnabled()) {
+            entries.put(path, new Entry<V>(value, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Removes the information for a path that has been modified. Because creating, deleting or renaming a file or
+     * directory also affects its parents and children, their information is removed too.
+     */
+    void invalidate(String path) {
+        if (!isEnabled() || entries.isEmpty()) {
+            return;
+        }
+        String descendantPrefix = path.endsWith(fileSeparator) ? path : path + fileSeparator;
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            String cached = it.next();
+            if (cached.equals(path) || cached.startsWith(descendantPrefix) || isAncestor(cached, path)) {
+                it.remove();
+            }
+        }
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private boolean isAncestor(String candidate, String path) {
+        if (!path.startsWith(candidate) || path.length() == candidate.length()) {
+            return false;
+        }
+        return candidate.endsWith(fileSeparator) || path.startsWith(fileSeparator, candidate.length());
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long created;
+
+        private Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+}
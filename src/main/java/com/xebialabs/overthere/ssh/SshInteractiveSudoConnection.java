@@ -30,6 +30,8 @@ import com.xebialabs.overthere.spi.AddressPortMapper;
 
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PASSWORD_PROMPT_REGEX;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PASSWORD_PROMPT_REGEX_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PASSWORD_PROMPT_SCAN_LIMIT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PASSWORD_PROMPT_SCAN_LIMIT_DEFAULT;
 
 /**
  * A connection to a Unix host using SSH w/ interactive SUDO.
@@ -41,6 +43,7 @@ class SshInteractiveSudoConnection extends SshSudoConnection {
 
         elevatedPassword = password;
         elevatedPasswordPromptRegex = options.get(SUDO_PASSWORD_PROMPT_REGEX, SUDO_PASSWORD_PROMPT_REGEX_DEFAULT);
+        elevatedPasswordPromptScanLimit = options.getInteger(SUDO_PASSWORD_PROMPT_SCAN_LIMIT, SUDO_PASSWORD_PROMPT_SCAN_LIMIT_DEFAULT);
 
         checkElevatedPasswordPromptRegex(this, SUDO_PASSWORD_PROMPT_REGEX, logger);
     }
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.schmizz.sshj.userauth.keyprovider.KeyPairWrapper;
+import net.schmizz.sshj.userauth.keyprovider.KeyProvider;
+
+/**
+ * Keeps the keys read from private keys and private key files, so that connections that use the same key do not read,
+ * parse and decrypt it again. A key is read once, even when many connections ask for it at the same time.
+ * <p/>
+ * An entry is identified by the key material, or by the path, modification time and size of the key file, together
+ * with a digest of the passphrase. A changed key file is therefore read again, and a key decrypted with one passphrase
+ * is never returned for another one. Keys that cannot be read are not kept, and neither are keys for which the loader
+ * returns no key provider.
+ */
+class SshKeyProviderCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Reads the keys of a cache entry, e.g. with <code>SSHClient.loadKeys</code>.
+     */
+    interface Loader {
+        KeyProvider load() throws IOException;
+    }
+
+    private final Map<String, FutureTask<KeyProvider>> entries;
+
+    SshKeyProviderCache(int maxEntries) {
+        this.entries = new LeastRecentlyUsedMap<String, FutureTask<KeyProvider>>(maxEntries);
+    }
+
+    /**
+     * @return the keys of the entry, read with the loader if they are not cached yet.
+     */
+    KeyProvider get(String cacheKey, final Loader loader) throws IOException {
+        FutureTask<KeyProvider> task;
+        boolean load = false;
+        synchronized (entries) {
+            task = entries.get(cacheKey);
+            if (task == null) {
+                task = new FutureTask<KeyProvider>(new Callable<KeyProvider>() {
+                    @Override
+                    public KeyProvider call() throws IOException {
+                        // The key providers of sshj only read the key when it is first used
+                        KeyProvider keys = loader.load();
+                        return keys == null ? null : new KeyPairWrapper(keys.getPublic(), keys.getPrivate());
+                    }
+                });
+                entries.put(cacheKey, task);
+                load = true;
+            }
+        }
+
+        if (load) {
+            logger.debug("Reading private key that is not cached yet");
+            task.run();
+        }
+
+        try {
+            KeyProvider keys = task.get();
+            if (keys == null) {
+                remove(cacheKey, task);
+            }
+            return keys;
+        } catch (ExecutionException exc) {
+            remove(cacheKey, task);
+            Throwable cause = exc.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a private key to be read");
+        }
+    }
+
+    private void remove(String cacheKey, FutureTask<KeyProvider> task) {
+        synchronized (entries) {
+            if (entries.get(cacheKey) == task) {
+                entries.remove(cacheKey);
+            }
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the cache key for keys read from private key material.
+     */
+    static String keyForPrivateKey(String privateKey, String passphrase) {
+        return "key:" + digest(privateKey) + ":" + digest(passphrase);
+    }
+
+    /**
+     * @return the cache key for keys read from a private key file in its current state.
+     */
+    static String keyForPrivateKeyFile(String privateKeyFile, String passphrase) {
+        File file = new File(privateKeyFile);
+        return "file:" + file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length() + ":" + digest(passphrase);
+    }
+
+    private static String digest(String s) {
+        if (s == null) {
+            return "-";
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(s.getBytes(UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException("SHA-256 is not available", exc);
+        }
+    }
+
+    /**
+     * Map that drops its least recently used entry when more than <code>maxEntries</code> entries are put into it.
+     */
+    private static class LeastRecentlyUsedMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        LeastRecentlyUsedMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshKeyProviderCache.class);
+
+}
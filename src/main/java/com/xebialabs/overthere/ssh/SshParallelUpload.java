@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.OverthereFile;
+import com.xebialabs.overthere.RuntimeIOException;
+import com.xebialabs.overthere.util.DaemonThreadFactory;
+
+import static com.xebialabs.overthere.util.OverthereUtils.checkArgument;
+import static java.lang.String.format;
+
+/**
+ * Uploads the contents of a directory tree over several SSH channels at the same time, so that the latency of every
+ * single file does not add up when a tree of many small files is uploaded.
+ * <p/>
+ * The calling thread walks the source tree and creates every directory on the target before it hands out the files in
+ * that directory. The files are uploaded by <code>parallelism</code> worker threads, each using its own channel. When an
+ * upload fails, no further files are handed out and the first failure is thrown once the running uploads have finished.
+ */
+abstract class SshParallelUpload {
+
+    private static final ThreadFactory UPLOAD_THREADS = new DaemonThreadFactory("ssh upload");
+
+    private final int parallelism;
+
+    SshParallelUpload(int parallelism) {
+        checkArgument(parallelism > 0, "parallelism must be positive, not %s", parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Uploads the contents of a source directory to a target directory, which is created if it does not exist yet.
+     */
+    void upload(OverthereFile sourceDir, OverthereFile targetDir) {
+        long start = System.nanoTime();
+        AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        List<Future<Long>> uploads = new ArrayList<Future<Long>>();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, UPLOAD_THREADS);
+        try {
+            if (!targetDir.exists()) {
+                targetDir.mkdir();
+            }
+            submitContents(sourceDir, targetDir, workers, uploads, failure);
+        } catch (RuntimeException exc) {
+            failure.compareAndSet(null, exc);
+        } finally {
+            workers.shutdown();
+        }
+
+        long bytes = 0;
+        for (Future<Long> upload : uploads) {
+            try {
+                bytes += upload.get();
+            } catch (InterruptedException exc) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new RuntimeIOException(format("Interrupted while uploading %s to %s", sourceDir, targetDir), exc);
+            } catch (ExecutionException ignored) {
+                // the failure has been recorded by the upload itself
+            }
+        }
+
+        Exception exc = failure.get();
+        if (exc != null) {
+            throw new RuntimeIOException(format("Cannot upload %s to %s: %s", sourceDir, targetDir, exc.toString()), exc);
+        }
+
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        logger.info("Uploaded {} files ({} bytes) from {} to {} over {} channels in {} ms ({} KiB/s)",
+                uploads.size(), bytes, sourceDir, targetDir, parallelism, millis, bytes * 1000 / 1024 / millis);
+    }
+
+    private void submitContents(OverthereFile sourceDir, OverthereFile targetDir, ExecutorService workers, List<Future<Long>> uploads,
+                                final AtomicReference<Exception> failure) {
+        for (final OverthereFile source : sourceDir.listFiles()) {
+            if (failure.get() != null) {
+                return;
+            }
+
+            final OverthereFile target = targetDir.getFile(source.getName());
+            if (source.isDirectory()) {
+                if (!target.exists()) {
+                    target.mkdir();
+                }
+                submitContents(source, target, workers, uploads, failure);
+            } else {
+                uploads.add(workers.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        if (failure.get() != null) {
+                            return 0L;
+                        }
+                        try {
+                            logger.debug("Uploading {} to {}", source, target);
+                            long length = source.length();
+                            uploadFile(source, target);
+                            return length;
+                        } catch (Exception exc) {
+                            failure.compareAndSet(null, exc);
+                            throw exc;
+                        }
+                    }
+                }));
+            }
+        }
+    }
+
+    /**
+     * Uploads a single file. Called by several worker threads at the same time, so every call must use a channel of its
+     * own.
+     */
+    protected abstract void uploadFile(OverthereFile source, OverthereFile target) throws IOException;
+
+    private static final Logger logger = LoggerFactory.getLogger(SshParallelUpload.class);
+
+}
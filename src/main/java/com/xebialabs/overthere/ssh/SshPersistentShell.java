@@ -0,0 +1,395 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.OverthereProcess;
+import com.xebialabs.overthere.RuntimeIOException;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
+
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static java.lang.String.format;
+
+/**
+ * A long-lived <code>/bin/sh</code> on an SSH host that executes one command at a time. Every command is followed by
+ * sentinels on stdout and stderr, so that the output and the exit code of each command can be separated without
+ * opening a new session channel per command.
+ * <p/>
+ * The command itself runs as <code>sh -c '...' &lt;/dev/null</code>, so that syntax errors, <code>exit</code> and
+ * <code>cd</code> in the command cannot affect the shell, and the command cannot consume the framing on stdin.
+ */
+class SshPersistentShell {
+
+    private static final String SHELL_COMMAND = "/bin/sh";
+
+    private static final String CHARSET = "UTF-8";
+
+    private final SshConnection connection;
+    private final Session session;
+    private final Session.Command shell;
+    private final OutputStream stdin;
+    private final FramedStream stdout;
+    private final FramedStream stderr;
+    private final String sentinelPrefix;
+    private final AtomicLong counter = new AtomicLong();
+    private final Semaphore available = new Semaphore(1);
+    private volatile boolean broken;
+
+    SshPersistentShell(SshConnection connection, SSHClient client) throws IOException {
+        this(connection, client, format("__OVERTHERE_%016x_", new SecureRandom().nextLong()));
+    }
+
+    SshPersistentShell(SshConnection connection, SSHClient client, String sentinelPrefix) throws IOException {
+        this.connection = connection;
+        this.session = client.startSession();
+        try {
+            this.shell = session.exec(SHELL_COMMAND);
+        } catch (IOException exc) {
+            closeQuietly(session);
+            throw exc;
+        }
+        this.stdin = shell.getOutputStream();
+        this.stdout = new FramedStream(shell.getInputStream());
+        this.stderr = new FramedStream(shell.getErrorStream());
+        this.sentinelPrefix = sentinelPrefix;
+        logger.debug("Started persistent shell on {}", connection);
+    }
+
+    boolean isUsable() {
+        return !broken && session.isOpen();
+    }
+
+    /**
+     * Reserves the shell for one command.
+     *
+     * @return <code>true</code> if the shell was available.
+     */
+    boolean tryAcquire() {
+        return available.tryAcquire();
+    }
+
+    /**
+     * Starts a command. The shell must have been {@link #tryAcquire() acquired}; it is released when the command has
+     * finished or has been destroyed.
+     */
+    OverthereProcess start(String commandLine, String obfuscatedCommandLine) {
+        String sentinel = sentinelPrefix + counter.incrementAndGet();
+        String script = "sh -c " + singleQuote(commandLine) + " </dev/null; "
+                + "printf '\\n%s %d\\n' " + sentinel + " $?; "
+                + "printf '\\n%s \\n' " + sentinel + " >&2\n";
+        try {
+            byte[] marker = ("\n" + sentinel + " ").getBytes(CHARSET);
+            PersistentShellProcess process = new PersistentShellProcess(obfuscatedCommandLine, marker);
+            stdin.write(script.getBytes(CHARSET));
+            stdin.flush();
+            return process;
+        } catch (IOException exc) {
+            markBroken();
+            available.release();
+            throw new RuntimeIOException(format("Cannot start command [%s] in persistent shell on [%s]", obfuscatedCommandLine, connection), exc);
+        }
+    }
+
+    void close() {
+        broken = true;
+        closeQuietly(session);
+        logger.debug("Closed persistent shell on {}", connection);
+    }
+
+    private void markBroken() {
+        if (!broken) {
+            logger.warn("Persistent shell on {} is no longer usable, closing it", connection);
+            close();
+        }
+    }
+
+    static String singleQuote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
+    private class PersistentShellProcess implements OverthereProcess {
+        private final String obfuscatedCommandLine;
+        private final CountDownLatch finished = new CountDownLatch(2);
+        private final InputStream stdoutView;
+        private final InputStream stderrView;
+        private volatile String exitCodeTrailer;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile Integer exitValue;
+
+        private PersistentShellProcess(String obfuscatedCommandLine, byte[] marker) {
+            this.obfuscatedCommandLine = obfuscatedCommandLine;
+            this.stdoutView = stdout.view(marker, new TrailerCallback() {
+                @Override
+                public void trailer(String trailer) {
+                    exitCodeTrailer = trailer;
+                    finished.countDown();
+                }
+            });
+            this.stderrView = stderr.view(marker, new TrailerCallback() {
+                @Override
+                public void trailer(String trailer) {
+                    finished.countDown();
+                }
+            });
+        }
+
+        @Override
+        public OutputStream getStdin() {
+            throw new UnsupportedOperationException("Cannot write to the stdin of a command executed in a persistent shell");
+        }
+
+        @Override
+        public InputStream getStdout() {
+            return stdoutView;
+        }
+
+        @Override
+        public InputStream getStderr() {
+            return stderrView;
+        }
+
+        /**
+         * Not synchronized, so that {@link #destroy()} can abort a command that does not finish. If the wait does not
+         * end with an exit code, the command may still be running in the shell, so the shell is marked broken before it
+         * is released.
+         */
+        @Override
+        public int waitFor() throws InterruptedException {
+            Integer value = exitValue;
+            if (value != null) {
+                return value;
+            }
+            boolean completed = false;
+            try {
+                finished.await();
+                String trailer = exitCodeTrailer;
+                if (trailer == null) {
+                    throw new RuntimeIOException(format("Persistent shell on [%s] ended while executing command [%s]", connection, obfuscatedCommandLine));
+                }
+                try {
+                    value = Integer.parseInt(trailer.trim());
+                } catch (NumberFormatException exc) {
+                    throw new RuntimeIOException(format("Unexpected exit code [%s] for command [%s] in persistent shell on [%s]", trailer, obfuscatedCommandLine, connection));
+                }
+                exitValue = value;
+                completed = true;
+                logger.info("Command [{}] on {} returned exit code {}", new Object[]{obfuscatedCommandLine, connection, value});
+                return value;
+            } finally {
+                if (!completed) {
+                    markBroken();
+                }
+                release();
+            }
+        }
+
+        @Override
+        public void destroy() {
+            if (finished.getCount() > 0) {
+                // The command may still be running and its output would end up in the output of the next command
+                markBroken();
+                while (finished.getCount() > 0) {
+                    finished.countDown();
+                }
+            }
+            release();
+        }
+
+        @Override
+        public int exitValue() {
+            Integer value = exitValue;
+            if (value == null) {
+                throw new IllegalThreadStateException(format("Process for command [%s] on [%s] is still running", obfuscatedCommandLine, connection));
+            }
+            return value;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                available.release();
+            }
+        }
+    }
+
+    private interface TrailerCallback {
+        void trailer(String trailer);
+    }
+
+    /**
+     * One of the output streams of the shell. The bytes that have been read from the channel but that belong to the
+     * next command are kept between commands.
+     */
+    private class FramedStream {
+        private final InputStream in;
+        private byte[] buffer = new byte[8192];
+        private int start;
+        private int end;
+
+        private FramedStream(InputStream in) {
+            this.in = in;
+        }
+
+        InputStream view(final byte[] marker, final TrailerCallback callback) {
+            return new InputStream() {
+                private boolean done;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    int n = read(b, 0, 1);
+                    return n < 0 ? -1 : b[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (done) {
+                        return -1;
+                    }
+                    if (len == 0) {
+                        return 0;
+                    }
+                    try {
+                        for (;;) {
+                            int markerAt = indexOf(marker);
+                            int available = (markerAt >= 0 ? markerAt : end - partialMarkerLength(marker)) - start;
+                            if (available > 0) {
+                                int n = Math.min(len, available);
+                                System.arraycopy(buffer, start, b, off, n);
+                                start += n;
+                                return n;
+                            }
+                            if (markerAt >= 0) {
+                                start += marker.length;
+                                String trailer = readTrailer();
+                                done = true;
+                                if (trailer == null) {
+                                    markBroken();
+                                }
+                                callback.trailer(trailer);
+                                return -1;
+                            }
+                            if (!fill()) {
+                                done = true;
+                                markBroken();
+                                callback.trailer(null);
+                                return -1;
+                            }
+                        }
+                    } catch (IOException exc) {
+                        done = true;
+                        markBroken();
+                        callback.trailer(null);
+                        throw exc;
+                    }
+                }
+
+                @Override
+                public void close() {
+                    // the stream of the shell stays open for the next command
+                }
+            };
+        }
+
+        private int indexOf(byte[] marker) {
+            outer:
+            for (int i = start; i <= end - marker.length; i++) {
+                for (int j = 0; j < marker.length; j++) {
+                    if (buffer[i + j] != marker[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the length of the longest tail of the buffered bytes that is a prefix of the marker. Those bytes cannot
+         * be returned yet, because they may turn out to be the start of the marker.
+         */
+        private int partialMarkerLength(byte[] marker) {
+            for (int length = Math.min(marker.length - 1, end - start); length > 0; length--) {
+                boolean matches = true;
+                for (int j = 0; j < length; j++) {
+                    if (buffer[end - length + j] != marker[j]) {
+                        matches = false;
+                        break;
+                    }
+                }
+                if (matches) {
+                    return length;
+                }
+            }
+            return 0;
+        }
+
+        private String readTrailer() throws IOException {
+            for (;;) {
+                for (int i = start; i < end; i++) {
+                    if (buffer[i] == '\n') {
+                        String trailer = new String(buffer, start, i - start, CHARSET);
+                        start = i + 1;
+                        return trailer;
+                    }
+                }
+                if (!fill()) {
+                    return null;
+                }
+            }
+        }
+
+        private boolean fill() throws IOException {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, end);
+                buffer = grown;
+            }
+            int n = in.read(buffer, end, buffer.length - end);
+            if (n < 0) {
+                return false;
+            }
+            end += n;
+            return true;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshPersistentShell.class);
+
+}
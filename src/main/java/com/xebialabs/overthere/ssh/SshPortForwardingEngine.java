@@ -0,0 +1,480 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.schmizz.sshj.common.Message;
+import net.schmizz.sshj.common.SSHException;
+import net.schmizz.sshj.common.SSHPacket;
+import net.schmizz.sshj.connection.Connection;
+import net.schmizz.sshj.connection.ConnectionException;
+import net.schmizz.sshj.connection.channel.direct.LocalPortForwarder;
+import net.schmizz.sshj.transport.TransportException;
+
+import static com.xebialabs.overthere.util.OverthereUtils.checkArgument;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static java.lang.String.format;
+
+/**
+ * Forwards the connections accepted on local ports over SSH <code>direct-tcpip</code> channels, multiplexing all listeners
+ * and forwarded connections of a tunnel onto a fixed number of selector threads.
+ * <p/>
+ * Local sockets are non-blocking and the channels are driven by the SSH transport thread, which only wakes up the selector
+ * thread that owns the forwarded connection. Data flows from a socket to its channel only while the remote window has room
+ * for it, and from a channel to its socket through a buffer of {@link #BUFFER_SIZE} bytes. The channel's local window is
+ * only adjusted when that buffer is drained, so a slow local reader stops the remote sender instead of filling up memory.
+ */
+class SshPortForwardingEngine implements Closeable {
+
+    /**
+     * Size of the buffer that holds data read from a channel that has not been written to its socket yet, and of the buffer
+     * that each selector thread reads socket data into.
+     */
+    static final int BUFFER_SIZE = 32 * 1024;
+
+    private final Connection connection;
+
+    private final SelectorLoop[] loops;
+
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    SshPortForwardingEngine(Connection connection, int threads, String name) throws IOException {
+        checkArgument(threads > 0, "Number of port forwarding threads must be positive, not %d", threads);
+        this.connection = connection;
+        this.loops = new SelectorLoop[threads];
+        try {
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new SelectorLoop(format("SSH port forwarding thread %d for %s", i + 1, name));
+            }
+        } catch (IOException exc) {
+            close();
+            throw exc;
+        }
+        for (SelectorLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    /**
+     * Starts accepting connections on a bound server socket and forwarding them to the remote address. The server socket is
+     * closed when this engine is closed.
+     */
+    void forward(final ServerSocketChannel serverSocketChannel, final InetSocketAddress remoteAddress) {
+        final SelectorLoop loop = nextLoop();
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                Listener listener = new Listener(serverSocketChannel, remoteAddress);
+                try {
+                    serverSocketChannel.configureBlocking(false);
+                    serverSocketChannel.register(loop.selector, SelectionKey.OP_ACCEPT, listener);
+                    logger.debug("Forwarding connections to {} to {}", serverSocketChannel.socket().getLocalSocketAddress(), remoteAddress);
+                } catch (IOException exc) {
+                    logger.error(format("Cannot forward connections to %s", remoteAddress), exc);
+                    listener.close();
+                }
+            }
+        });
+    }
+
+    int getThreadCount() {
+        return loops.length;
+    }
+
+    @Override
+    public void close() {
+        for (SelectorLoop loop : loops) {
+            if (loop != null) {
+                loop.close();
+            }
+        }
+    }
+
+    private SelectorLoop nextLoop() {
+        return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+
+    private interface Handler extends Closeable {
+        void ready(SelectionKey key) throws IOException;
+
+        @Override
+        void close();
+    }
+
+    private static class SelectorLoop extends Thread {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private volatile boolean closed;
+
+        SelectorLoop(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        Handler handler = (Handler) key.attachment();
+                        try {
+                            if (key.isValid()) {
+                                handler.ready(key);
+                            }
+                        } catch (IOException exc) {
+                            logger.debug("Closing {} after I/O error", handler, exc);
+                            handler.close();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException | ClosedSelectorException exc) {
+                if (!closed) {
+                    logger.error("Port forwarding selector failed", exc);
+                }
+            } finally {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.keys()) {
+                    ((Handler) key.attachment()).close();
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        void close() {
+            closed = true;
+            selector.wakeup();
+            if (Thread.currentThread() != this) {
+                try {
+                    join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private class Listener implements Handler {
+        private final ServerSocketChannel serverSocketChannel;
+        private final InetSocketAddress remoteAddress;
+        private final LocalPortForwarder.Parameters parameters;
+
+        Listener(ServerSocketChannel serverSocketChannel, InetSocketAddress remoteAddress) {
+            this.serverSocketChannel = serverSocketChannel;
+            this.remoteAddress = remoteAddress;
+            this.parameters = new LocalPortForwarder.Parameters("localhost", serverSocketChannel.socket().getLocalPort(),
+                    remoteAddress.getHostName(), remoteAddress.getPort());
+        }
+
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+            SocketChannel socketChannel;
+            while ((socketChannel = serverSocketChannel.accept()) != null) {
+                logger.debug("Got connection from {} for {}", socketChannel.socket().getRemoteSocketAddress(), remoteAddress);
+                socketChannel.configureBlocking(false);
+                final SelectorLoop loop = nextLoop();
+                final Forward forward = new Forward(loop, socketChannel, parameters);
+                loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        forward.open();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(serverSocketChannel);
+        }
+
+        @Override
+        public String toString() {
+            return "listener for " + remoteAddress;
+        }
+    }
+
+    /**
+     * A forwarded connection. Its socket is only touched by the thread of its {@link SelectorLoop}; the SSH transport thread
+     * {@link #schedule() schedules} it on that thread whenever something happens on its channel.
+     */
+    private class Forward implements Handler, Runnable {
+        private final SelectorLoop loop;
+        private final SocketChannel socketChannel;
+        private final LocalPortForwarder.Parameters parameters;
+        private final ForwardingChannel channel;
+        private final ByteBuffer toSocket = ByteBuffer.allocate(BUFFER_SIZE);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private SelectionKey key;
+        private boolean socketEof;
+        private boolean socketOutputShutdown;
+        private boolean closed;
+
+        Forward(SelectorLoop loop, SocketChannel socketChannel, LocalPortForwarder.Parameters parameters) {
+            this.loop = loop;
+            this.socketChannel = socketChannel;
+            this.parameters = parameters;
+            this.channel = new ForwardingChannel(connection, socketChannel, parameters, this);
+            toSocket.limit(0);
+        }
+
+        void open() {
+            if (loop.closed) {
+                close();
+                return;
+            }
+            try {
+                key = socketChannel.register(loop.selector, 0, this);
+                channel.sendOpen();
+            } catch (IOException exc) {
+                logger.warn(format("Cannot open a channel to %s:%d", parameters.getRemoteHost(), parameters.getRemotePort()), exc);
+                close();
+            }
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                loop.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+            if (closed) {
+                closeChannel();
+                return;
+            }
+            if (key == null) {
+                return;
+            }
+            try {
+                pump();
+            } catch (IOException exc) {
+                logger.debug("Closing {} after I/O error", this, exc);
+                close();
+            }
+        }
+
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+            if (key.isReadable()) {
+                readSocket();
+            }
+            pump();
+        }
+
+        private void readSocket() throws IOException {
+            ByteBuffer buffer = loop.readBuffer;
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), channel.getRemoteWinSize()));
+            int n = socketChannel.read(buffer);
+            if (n < 0) {
+                socketEof = true;
+                channel.getOutputStream().flush();
+                channel.sendEof();
+            } else if (n > 0) {
+                channel.getOutputStream().write(buffer.array(), 0, n);
+                channel.getOutputStream().flush();
+            }
+        }
+
+        /**
+         * Moves data from the channel to the socket for as long as the socket accepts it, then updates the interest set or
+         * closes this forward when both directions are done.
+         */
+        private void pump() throws IOException {
+            if (channel.failed()) {
+                close();
+                return;
+            }
+            if (!channel.isOpened()) {
+                return;
+            }
+
+            for (;;) {
+                if (!toSocket.hasRemaining()) {
+                    int available = channel.getInputStream().available();
+                    if (available == 0) {
+                        break;
+                    }
+                    toSocket.clear();
+                    int n = channel.getInputStream().read(toSocket.array(), 0, Math.min(available, toSocket.capacity()));
+                    toSocket.limit(n);
+                }
+                if (socketChannel.write(toSocket) == 0) {
+                    break;
+                }
+            }
+
+            boolean channelDone = channel.isInputDone() && !toSocket.hasRemaining() && channel.getInputStream().available() == 0;
+            if (channelDone && !socketOutputShutdown) {
+                socketOutputShutdown = true;
+                socketChannel.socket().shutdownOutput();
+            }
+            if (channelDone && (socketEof || channel.isRemoteClosed())) {
+                close();
+                return;
+            }
+
+            int ops = 0;
+            if (!socketEof && !channel.isRemoteClosed() && channel.getRemoteWinSize() > 0) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (toSocket.hasRemaining()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeQuietly(socketChannel);
+            closeChannel();
+        }
+
+        /**
+         * Closes the channel once it has been opened. A channel that is still being opened is closed when its confirmation
+         * {@link #schedule() schedules} this forward again.
+         */
+        private void closeChannel() {
+            if (!channel.isOpened()) {
+                return;
+            }
+            try {
+                channel.sendCloseRequest();
+            } catch (TransportException exc) {
+                logger.debug("Cannot close channel of {}", this, exc);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return format("forward from %s to %s:%d", socketChannel.socket().getRemoteSocketAddress(),
+                    parameters.getRemoteHost(), parameters.getRemotePort());
+        }
+    }
+
+    /**
+     * A <code>direct-tcpip</code> channel that is opened without waiting for the confirmation and that schedules its
+     * {@link Forward} whenever a message for it arrives.
+     */
+    private static class ForwardingChannel extends LocalPortForwarder.DirectTCPIPChannel {
+        private final Forward forward;
+        private volatile boolean inputDone;
+        private volatile boolean remoteClosed;
+
+        ForwardingChannel(Connection connection, SocketChannel socketChannel, LocalPortForwarder.Parameters parameters, Forward forward) {
+            super(connection, socketChannel.socket(), parameters);
+            this.forward = forward;
+        }
+
+        void sendOpen() throws TransportException {
+            trans.write(buildOpenReq());
+        }
+
+        void sendEof() throws TransportException {
+            trans.write(newBuffer(Message.CHANNEL_EOF));
+        }
+
+        void sendCloseRequest() throws TransportException {
+            sendClose();
+        }
+
+        boolean isOpened() {
+            return openEvent.isSet();
+        }
+
+        boolean failed() {
+            return openEvent.inError();
+        }
+
+        boolean isInputDone() {
+            return inputDone;
+        }
+
+        boolean isRemoteClosed() {
+            return remoteClosed;
+        }
+
+        @Override
+        public void handle(Message msg, SSHPacket buf) throws ConnectionException, TransportException {
+            try {
+                super.handle(msg, buf);
+            } finally {
+                if (msg == Message.CHANNEL_EOF) {
+                    inputDone = true;
+                } else if (msg == Message.CHANNEL_CLOSE) {
+                    inputDone = true;
+                    remoteClosed = true;
+                }
+                forward.schedule();
+            }
+        }
+
+        @Override
+        public void notifyError(SSHException error) {
+            super.notifyError(error);
+            inputDone = true;
+            remoteClosed = true;
+            forward.schedule();
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshPortForwardingEngine.class);
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.OverthereProcess;
+
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static java.lang.String.format;
+
+/**
+ * Reads the stdout of a command on the remote host, e.g. <code>sudo cat file</code>, so that the bytes are returned while
+ * they arrive. When the end of the stream is reached, the command is waited for; a non-zero exit value is reported as an
+ * {@link IOException}. Closing the stream before then destroys the command.
+ */
+class SshProcessInputStream extends InputStream {
+
+    private final OverthereProcess process;
+    private final InputStream stdout;
+    private final SshStreamDrainer stderr;
+    private final String description;
+    private boolean eof;
+    private boolean closed;
+
+    SshProcessInputStream(OverthereProcess process, String description, Executor drainExecutor) {
+        this.process = process;
+        this.stdout = process.getStdout();
+        this.stderr = SshStreamDrainer.drain(process.getStderr(), "stderr of command reading " + description, drainExecutor);
+        this.description = description;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (eof) {
+            return -1;
+        }
+        int n = stdout.read(b, off, len);
+        if (n < 0) {
+            finish();
+        }
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return eof ? 0 : stdout.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!eof) {
+            logger.debug("Closing stream of {} before the end was reached, destroying the command", description);
+            eof = true;
+            process.destroy();
+        }
+    }
+
+    private void finish() throws IOException {
+        eof = true;
+        // keep stdin open until now, an elevated command may need it to answer a password prompt
+        closeQuietly(process.getStdin());
+        int exitValue;
+        try {
+            exitValue = process.waitFor();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException(format("Interrupted while waiting for the command reading %s to finish", description), exc);
+        }
+        if (exitValue != 0) {
+            throw new IOException(format("Cannot read %s: %s (exitValue=%d)", description, stderr.awaitOutput(), exitValue));
+        }
+        logger.debug("Finished reading {}", description);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshProcessInputStream.class);
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.OverthereProcess;
+
+import static java.lang.String.format;
+
+/**
+ * Writes to the stdin of a command started on the remote host, e.g. the <code>writeFileCommand</code> of an SCP connection
+ * or the <code>sudoWriteFileCommand</code> of a SUDO connection, so that the bytes are sent to the host while they are
+ * being written. The output of the command is drained meanwhile and its error output is reported if it exits with a
+ * non-zero exit value when the stream is closed.
+ */
+class SshProcessOutputStream extends OutputStream {
+
+    private final OverthereProcess process;
+    private final OutputStream stdin;
+    private final SshStreamDrainer stdout;
+    private final SshStreamDrainer stderr;
+    private final String description;
+    private boolean closed;
+
+    SshProcessOutputStream(OverthereProcess process, String description, Executor drainExecutor) {
+        this.process = process;
+        this.stdin = process.getStdin();
+        // the command should not write to its stdout, but if it does it must not block on it
+        this.stdout = SshStreamDrainer.drain(process.getStdout(), "stdout of command writing to " + description, drainExecutor);
+        this.stderr = SshStreamDrainer.drain(process.getStderr(), "stderr of command writing to " + description, drainExecutor);
+        this.description = description;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            stdin.write(b, off, len);
+        } catch (IOException exc) {
+            throw failure(exc);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            stdin.flush();
+        } catch (IOException exc) {
+            throw failure(exc);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            stdin.close();
+        } catch (IOException exc) {
+            throw failure(exc);
+        }
+        int exitValue = waitFor();
+        if (exitValue != 0) {
+            throw new IOException(format("Cannot write to %s: %s (exitValue=%d)", description, stderr.awaitOutput(), exitValue));
+        }
+        stdout.awaitOutput();
+        logger.debug("Finished writing to {}", description);
+    }
+
+    /**
+     * The command may have exited early, e.g. because the file cannot be created. Its error output explains why better
+     * than the exception caused by writing to a closed channel.
+     */
+    private IOException failure(IOException cause) {
+        closed = true;
+        try {
+            return new IOException(format("Cannot write to %s: %s (exitValue=%d)", description, stderr.awaitOutput(), waitFor()), cause);
+        } catch (IOException exc) {
+            return cause;
+        }
+    }
+
+    private int waitFor() throws IOException {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException(format("Interrupted while waiting for the command writing to %s to finish", description), exc);
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshProcessOutputStream.class);
+
+}
@@ -36,10 +36,14 @@ import static com.xebialabs.overthere.ssh.SshConnectionBuilder.DELETE_FILE_COMMA
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.DELETE_FILE_COMMAND_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.DELETE_RECURSIVELY_COMMAND;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.DELETE_RECURSIVELY_COMMAND_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.FILE_INFO_CACHE_TTL_MILLIS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.FILE_INFO_CACHE_TTL_MILLIS_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.GET_FILE_INFO_COMMAND;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.GET_FILE_INFO_COMMAND_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.LIST_FILES_COMMAND;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.LIST_FILES_COMMAND_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.LIST_FILES_WITH_ATTRIBUTES_COMMAND;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.LIST_FILES_WITH_ATTRIBUTES_COMMAND_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.MKDIRS_COMMAND;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.MKDIRS_COMMAND_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.MKDIR_COMMAND;
@@ -51,6 +55,8 @@ import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SET_EXECUTABLE_CO
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SET_NOT_EXECUTABLE_COMMAND;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SET_NOT_EXECUTABLE_COMMAND_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SSH_PROTOCOL;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.WRITE_FILE_COMMAND;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.WRITE_FILE_COMMAND_DEFAULT;
 
 /**
  * A connection to a Unix host using SSH w/ SCP.
@@ -67,6 +73,8 @@ class SshScpConnection extends SshConnection {
 
     protected String listFilesCommand;
 
+    protected String listFilesWithAttributesCommand;
+
     protected String mkdirCommand;
 
     protected String mkdirsCommand;
@@ -77,6 +85,10 @@ class SshScpConnection extends SshConnection {
 
     protected String setNotExecutableCommand;
 
+    protected String writeFileCommand;
+
+    protected SshFileInfoCache<SshScpFile.LsResults> fileInfoCache;
+
     public SshScpConnection(String type, ConnectionOptions options, AddressPortMapper mapper) {
         super(type, options, mapper);
         checkArgument(os != WINDOWS, "Cannot create a %s connection to a host that is running Windows", protocolAndConnectionType);
@@ -87,11 +99,21 @@ class SshScpConnection extends SshConnection {
         deleteRecursivelyCommand = options.get(DELETE_RECURSIVELY_COMMAND, DELETE_RECURSIVELY_COMMAND_DEFAULT);
         getFileInfoCommand = options.get(GET_FILE_INFO_COMMAND, GET_FILE_INFO_COMMAND_DEFAULT);
         listFilesCommand = options.get(LIST_FILES_COMMAND, LIST_FILES_COMMAND_DEFAULT);
+        listFilesWithAttributesCommand = options.get(LIST_FILES_WITH_ATTRIBUTES_COMMAND, LIST_FILES_WITH_ATTRIBUTES_COMMAND_DEFAULT);
         mkdirCommand = options.get(MKDIR_COMMAND, MKDIR_COMMAND_DEFAULT);
         mkdirsCommand = options.get(MKDIRS_COMMAND, MKDIRS_COMMAND_DEFAULT);
         renameToCommand = options.get(RENAME_TO_COMMAND, RENAME_TO_COMMAND_DEFAULT);
         setExecutableCommand = options.get(SET_EXECUTABLE_COMMAND, SET_EXECUTABLE_COMMAND_DEFAULT);
         setNotExecutableCommand = options.get(SET_NOT_EXECUTABLE_COMMAND, SET_NOT_EXECUTABLE_COMMAND_DEFAULT);
+        writeFileCommand = options.get(WRITE_FILE_COMMAND, WRITE_FILE_COMMAND_DEFAULT);
+        fileInfoCache = new SshFileInfoCache<SshScpFile.LsResults>(options.getInteger(FILE_INFO_CACHE_TTL_MILLIS, FILE_INFO_CACHE_TTL_MILLIS_DEFAULT), os.getFileSeparator());
+    }
+
+    /**
+     * Removes cached information about a file that has been modified, and about its parents and children.
+     */
+    void invalidateFileInfo(String path) {
+        fileInfoCache.invalidate(path);
     }
 
     @Override
@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
@@ -55,6 +56,15 @@ class SshScpFile extends SshFile<SshScpConnection> {
 
     private static Pattern permissionsTokenPattern = Pattern.compile(PERMISSIONS_TOKEN_PATTERN);
 
+    private static final String LS_LISTING_LINE_PATTERN = ".*?([\\-bcdlps]([r\\-][w\\-][xsStT\\-]){3})[@\\.\\+]*\\s+\\d+\\s+\\S+\\s+\\S+\\s+(\\d+|\\d+,\\s*\\d+)\\s+"
+            + "((?:[A-Za-z]{3}\\s+\\d{1,2}|\\d{1,2}\\s+[A-Za-z]{3})\\s+(?:\\d{1,2}:\\d{2}|\\d{4}))\\s(.*)";
+
+    private static Pattern lsListingLinePattern = Pattern.compile(LS_LISTING_LINE_PATTERN);
+
+    private static Pattern lsTotalLinePattern = Pattern.compile(".*?total\\s+\\d+.*");
+
+    private static final String[] MONTHS = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+
     /**
      * Constructs an SshScpOverthereFile
      *
@@ -95,10 +105,22 @@ class SshScpFile extends SshFile<SshScpConnection> {
         return getFileInfo().isDirectory;
     }
 
+    /**
+     * Returns the modification time as shown by <code>ls -l</code>, which is accurate to the minute for recent files and to the
+     * day for older files.
+     *
+     * @throws RuntimeIOException if the modification time could not be parsed from the output of <code>ls</code>.
+     */
     @Override
     public long lastModified() {
-        // FIXME: Implement by parsing the date output of `ls -l`
-        throw new UnsupportedOperationException();
+        LsResults results = getFileInfo();
+        if (!results.exists) {
+            return 0;
+        }
+        if (results.lastModified < 0) {
+            throw new RuntimeIOException("Cannot determine the modification time of " + this + " from the output of ls");
+        }
+        return results.lastModified;
     }
 
     @Override
@@ -107,12 +129,18 @@ class SshScpFile extends SshFile<SshScpConnection> {
     }
 
     /**
-     * Gets information about the file by executing "ls -ld" on it.
+     * Gets information about the file by executing "ls -ld" on it, unless it is still cached from an earlier call.
      *
      * @return the information about the file, never <code>null</code>.
      * @throws RuntimeIOException if an I/O exception occurs
      */
     public LsResults getFileInfo() throws RuntimeIOException {
+        LsResults cached = getFileInfoCache().get(getPath());
+        if (cached != null) {
+            logger.trace("Using cached file info of {}", this);
+            return cached;
+        }
+
         logger.debug("Retrieving file info of {}", this);
 
         CmdLine lsCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(connection.getFileInfoCommand, getPath());
@@ -138,9 +166,33 @@ class SshScpFile extends SshFile<SshScpConnection> {
                 results.isDirectory, results.length
                 , results.canRead, results.canWrite, results.canExecute});
 
+        getFileInfoCache().put(getPath(), results);
         return results;
     }
 
+    protected SshFileInfoCache<LsResults> getFileInfoCache() {
+        return connection.fileInfoCache;
+    }
+
+    /**
+     * Removes cached information about this file, its parents and its children after it has been modified.
+     */
+    protected void invalidateFileInfo() {
+        connection.invalidateFileInfo(getPath());
+    }
+
+    @Override
+    public void refresh() {
+        invalidateFileInfo();
+    }
+
+    /**
+     * Caches the information about this file that was returned when listing its parent directory.
+     */
+    protected void setListedFileInfo(LsResults results) {
+        getFileInfoCache().put(getPath(), results);
+    }
+
     protected boolean parseLsOutputLine(LsResults results, String outputLine) {
         StringTokenizer outputTokens = new StringTokenizer(outputLine);
         if (outputTokens.countTokens() < 5) {
@@ -174,9 +226,97 @@ class SshScpFile extends SshFile<SshScpConnection> {
         } catch (NumberFormatException exc) {
             logger.warn("Cannot parse length of " + this.getPath() + " from ls output: " + outputLine + ". Length will be reported as -1.", exc);
         }
+        if (outputTokens.countTokens() >= 3) {
+            String timestamp = outputTokens.nextToken() + " " + outputTokens.nextToken() + " " + outputTokens.nextToken();
+            results.lastModified = parseLsTimestamp(timestamp, System.currentTimeMillis());
+        }
         return true;
     }
 
+    /**
+     * Parses a line of the long format output of <code>ls</code> for an entry in a directory.
+     *
+     * @return the name of the entry, or <code>null</code> if the line cannot be parsed.
+     */
+    protected String parseLsListingLine(LsResults results, String outputLine) {
+        Matcher matcher = lsListingLinePattern.matcher(outputLine);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        String permissions = matcher.group(1);
+        results.exists = true;
+        results.isFile = permissions.charAt(0) == '-';
+        results.isDirectory = permissions.charAt(0) == 'd';
+        results.canRead = permissions.charAt(1) == 'r';
+        results.canWrite = permissions.charAt(2) == 'w';
+        results.canExecute = permissions.charAt(3) == 'x' || permissions.charAt(3) == 's' || permissions.charAt(3) == 't';
+        try {
+            results.length = Long.parseLong(matcher.group(3));
+        } catch (NumberFormatException ignored) {
+            // device files show their major and minor numbers instead of their size
+        }
+        results.lastModified = parseLsTimestamp(matcher.group(4), System.currentTimeMillis());
+
+        String name = matcher.group(5);
+        if (permissions.charAt(0) == 'l') {
+            int arrow = name.indexOf(" -> ");
+            if (arrow >= 0) {
+                name = name.substring(0, arrow);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Parses a modification time as shown by <code>ls -l</code>, e.g. <code>Dec 17 15:28</code> for recent files or
+     * <code>Dec 17 2015</code> for older files. The time is interpreted in the local time zone.
+     *
+     * @return the modification time in milliseconds since the epoch, or <code>-1</code> if it cannot be parsed.
+     */
+    static long parseLsTimestamp(String timestamp, long now) {
+        String[] parts = timestamp.trim().split("\\s+");
+        if (parts.length != 3) {
+            return -1;
+        }
+        boolean monthFirst = !Character.isDigit(parts[0].charAt(0));
+        int month = parseMonth(monthFirst ? parts[0] : parts[1]);
+        if (month < 0) {
+            return -1;
+        }
+        try {
+            int day = Integer.parseInt(monthFirst ? parts[1] : parts[0]);
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(now);
+            int currentYear = calendar.get(Calendar.YEAR);
+            calendar.clear();
+            int colon = parts[2].indexOf(':');
+            if (colon >= 0) {
+                int hour = Integer.parseInt(parts[2].substring(0, colon));
+                int minute = Integer.parseInt(parts[2].substring(colon + 1));
+                calendar.set(currentYear, month, day, hour, minute);
+                // ls shows the time instead of the year for files modified in the last six months
+                if (calendar.getTimeInMillis() > now + 24L * 60 * 60 * 1000) {
+                    calendar.set(Calendar.YEAR, currentYear - 1);
+                }
+            } else {
+                calendar.set(Integer.parseInt(parts[2]), month, day);
+            }
+            return calendar.getTimeInMillis();
+        } catch (NumberFormatException exc) {
+            return -1;
+        }
+    }
+
+    private static int parseMonth(String month) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (MONTHS[i].equalsIgnoreCase(month)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Holds results of an ls call
      */
@@ -189,38 +329,47 @@ class SshScpFile extends SshFile<SshScpConnection> {
         public boolean canRead;
         public boolean canWrite;
         public boolean canExecute;
+
+        public long lastModified = -1;
     }
 
     @Override
     public InputStream getInputStream() throws RuntimeIOException {
+        logger.debug("Opening scp input stream to read from {}", this);
         try {
-            final File tempFile = File.createTempFile("scp_download", ".tmp");
-            tempFile.deleteOnExit();
-
-            logger.debug("Downloading contents of {} to temporary file {}", this, tempFile);
-            connection.getSshClient().newSCPFileTransfer().download(getPath(), tempFile.getPath());
-
-            logger.debug("Opening input stream to temporary file {} to retrieve contents downloaded from {}. Temporary file will be deleted when the stream is closed", tempFile, this);
-            return asBuffered(new FileInputStream(tempFile) {
-                @Override
-                public void close() throws IOException {
-                    logger.debug("Closing input stream to temporary file {}", tempFile);
-                    try {
-                        super.close();
-                    } finally {
-                        logger.debug("Deleting temporary file {}", tempFile);
-                        tempFile.delete();
-                    }
-
-                }
-            });
+            return asBuffered(new SshScpInputStream(connection.getSshClient().startSession(), connection.getHostOperatingSystem(), getPath()));
         } catch (IOException exc) {
             throw new RuntimeIOException(format("Cannot open %s for reading: %s", this, exc.toString()), exc);
         }
     }
 
+    /**
+     * Opens a stream that stores the written bytes in a local temporary file that is uploaded with SCP when the stream is
+     * closed. If <code>writeFileCommand</code> is set, the bytes are sent to the stdin of that command as they are written
+     * instead.
+     */
     @Override
     public OutputStream getOutputStream() throws RuntimeIOException {
+        if (connection.writeFileCommand == null || connection.writeFileCommand.isEmpty()) {
+            return getOutputStreamThroughTempFile();
+        }
+
+        logger.debug("Opening streaming output stream to write to {}", this);
+        CmdLine writeCmdLine = build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(connection.writeFileCommand, getPath());
+        invalidateFileInfo();
+        return asBuffered(new SshProcessOutputStream(startProcess(writeCmdLine), toString(), connection.getOutputPumpExecutor()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    invalidateFileInfo();
+                }
+            }
+        });
+    }
+
+    private OutputStream getOutputStreamThroughTempFile() {
         try {
             final File tempFile = File.createTempFile("scp_upload", ".tmp");
             tempFile.deleteOnExit();
@@ -242,6 +391,7 @@ class SshScpFile extends SshFile<SshScpConnection> {
                     try {
                         connection.getSshClient().newSCPFileTransfer().upload(tempFile.getPath(), getPath());
                     } finally {
+                        invalidateFileInfo();
                         logger.debug("Deleting temporary file {}", tempFile);
                         tempFile.delete();
                     }
@@ -252,10 +402,22 @@ class SshScpFile extends SshFile<SshScpConnection> {
         }
     }
 
+    /**
+     * Lists the directory with <code>listFilesWithAttributesCommand</code>, so that the returned files already know their type,
+     * size, permissions and modification time. Falls back to <code>listFilesCommand</code> if that output cannot be parsed.
+     */
     @Override
     public List<OverthereFile> listFiles() {
         logger.debug("Listing directory {}", this);
 
+        // The attributes of the entries can only be kept in the file info cache, so there is no use in listing them if it is disabled
+        if (getFileInfoCache().isEnabled() && connection.listFilesWithAttributesCommand != null && !connection.listFilesWithAttributesCommand.isEmpty()) {
+            List<OverthereFile> files = listFilesWithAttributes();
+            if (files != null) {
+                return files;
+            }
+        }
+
         CmdLine lsCmdLine = build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(connection.listFilesCommand, getPath());
 
         CapturingOverthereExecutionOutputHandler capturedStdout = capturingHandler();
@@ -276,6 +438,40 @@ class SshScpFile extends SshFile<SshScpConnection> {
         return files;
     }
 
+    private List<OverthereFile> listFilesWithAttributes() {
+        CmdLine lsCmdLine = build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(connection.listFilesWithAttributesCommand, getPath());
+
+        CapturingOverthereExecutionOutputHandler capturedStdout = capturingHandler();
+        CapturingOverthereExecutionOutputHandler capturedStderr = capturingHandler();
+        int errno = executeCommand(multiHandler(loggingOutputHandler(logger), capturedStdout), multiHandler(loggingErrorHandler(logger), capturedStderr), lsCmdLine);
+        if (errno != 0) {
+            logger.debug("Cannot list directory {} with attributes: {} (errno={}), listing it without attributes", this, capturedStderr.getOutput(), errno);
+            return null;
+        }
+
+        List<OverthereFile> files = new ArrayList<OverthereFile>();
+        for (String lsLine : capturedStdout.getOutputLines()) {
+            if (lsLine.trim().isEmpty() || lsTotalLinePattern.matcher(lsLine).matches()) {
+                continue;
+            }
+
+            LsResults results = new LsResults();
+            String name = parseLsListingLine(results, lsLine);
+            if (name == null) {
+                logger.debug("Cannot parse ls output line [{}], listing directory {} without attributes", lsLine, this);
+                return null;
+            }
+            // Filter out the '.' and '..'
+            if (!(".".equals(name) || "..".equals(name))) {
+                SshScpFile file = (SshScpFile) connection.getFile(this, name);
+                file.setListedFileInfo(results);
+                files.add(file);
+            }
+        }
+
+        return files;
+    }
+
     @Override
     public void mkdir() {
         logger.debug("Creating directory {}", this);
@@ -292,7 +488,11 @@ class SshScpFile extends SshFile<SshScpConnection> {
 
     protected void mkdir(String command) throws RuntimeIOException {
         CmdLine mkdirCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(command, getPath());
-        executeAndThrowOnErrorCode(mkdirCmdLine, "Cannot create directory or -ies " + this);
+        try {
+            executeAndThrowOnErrorCode(mkdirCmdLine, "Cannot create directory or -ies " + this);
+        } finally {
+            invalidateFileInfo();
+        }
 
         if (logger.isDebugEnabled()) {
             logger.debug("Created directory " + this + " (using command: " + command + ")");
@@ -307,7 +507,12 @@ class SshScpFile extends SshFile<SshScpConnection> {
             SshScpFile sshScpDestFile = (SshScpFile) dest;
             if (sshScpDestFile.getConnection() == getConnection()) {
                 CmdLine mvCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(connection.renameToCommand, getPath(), sshScpDestFile.getPath());
-                executeAndThrowOnErrorCode(mvCmdLine, "Cannot rename file/directory " + this);
+                try {
+                    executeAndThrowOnErrorCode(mvCmdLine, "Cannot rename file/directory " + this);
+                } finally {
+                    invalidateFileInfo();
+                    sshScpDestFile.invalidateFileInfo();
+                }
             } else {
                 throw new RuntimeIOException("Cannot rename " + connection.protocolAndConnectionType + " file/directory " + this
                         + " to file/directory " + dest + " because it is in a different connection");
@@ -323,7 +528,11 @@ class SshScpFile extends SshFile<SshScpConnection> {
         logger.debug("Setting execute permission on {} to {}", this, executable);
 
         CmdLine chmodCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(executable ? connection.setExecutableCommand : connection.setNotExecutableCommand, getPath());
-        executeAndThrowOnErrorCode(chmodCmdLine, "Cannot set execute permission on file " + this + " to " + executable);
+        try {
+            executeAndThrowOnErrorCode(chmodCmdLine, "Cannot set execute permission on file " + this + " to " + executable);
+        } finally {
+            invalidateFileInfo();
+        }
     }
 
     @Override
@@ -331,7 +540,11 @@ class SshScpFile extends SshFile<SshScpConnection> {
         logger.debug("Deleting directory {}", this);
 
         CmdLine rmdirCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(connection.deleteDirectoryCommand, getPath());
-        executeAndThrowOnErrorCode(rmdirCmdLine, "Cannot delete directory " + this);
+        try {
+            executeAndThrowOnErrorCode(rmdirCmdLine, "Cannot delete directory " + this);
+        } finally {
+            invalidateFileInfo();
+        }
     }
 
     @Override
@@ -339,7 +552,11 @@ class SshScpFile extends SshFile<SshScpConnection> {
         logger.debug("Deleting file {}", this);
 
         CmdLine rmCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(connection.deleteFileCommand, getPath());
-        executeAndThrowOnErrorCode(rmCmdLine, "Cannot delete file " + this);
+        try {
+            executeAndThrowOnErrorCode(rmCmdLine, "Cannot delete file " + this);
+        } finally {
+            invalidateFileInfo();
+        }
     }
 
     @Override
@@ -347,13 +564,40 @@ class SshScpFile extends SshFile<SshScpConnection> {
         logger.debug("Recursively deleting file or directory {}", this);
 
         CmdLine rmCmdLine = CmdLine.build(NOCD_PSEUDO_COMMAND).addTemplatedFragment(connection.deleteRecursivelyCommand, getPath());
-        executeAndThrowOnErrorCode(rmCmdLine, "Cannot recursively delete file or directory " + this);
+        try {
+            executeAndThrowOnErrorCode(rmCmdLine, "Cannot recursively delete file or directory " + this);
+        } finally {
+            invalidateFileInfo();
+        }
     }
 
     @Override
     protected void copyFrom(OverthereFile source) {
         logger.debug("Copying file or directory {} to {}", source, this);
 
+        try {
+            upload(source);
+        } finally {
+            invalidateFileInfo();
+        }
+    }
+
+    private void upload(OverthereFile source) {
+        if (uploadAsTar(source)) {
+            return;
+        }
+
+        if (connection.uploadParallelism > 1 && source.isDirectory()) {
+            new SshParallelUpload(connection.uploadParallelism) {
+                @Override
+                protected void uploadFile(OverthereFile sourceFile, OverthereFile targetFile) throws IOException {
+                    SCPUploadClient uploadClient = connection.getSshClient().newSCPFileTransfer().newSCPUploadClient();
+                    uploadClient.copy(new OverthereFileLocalSourceFile(sourceFile), targetFile.getPath());
+                }
+            }.upload(source, this);
+            return;
+        }
+
         SCPUploadClient uploadClient = connection.getSshClient().newSCPFileTransfer().newSCPUploadClient();
 
         try {
@@ -369,6 +613,15 @@ class SshScpFile extends SshFile<SshScpConnection> {
         }
     }
 
+    @Override
+    protected void shortCircuitCopyFrom(OverthereFile source) {
+        try {
+            super.shortCircuitCopyFrom(source);
+        } finally {
+            invalidateFileInfo();
+        }
+    }
+
     private void executeAndThrowOnErrorCode(CmdLine mkdirCmdLine, String message) {
         CapturingOverthereExecutionOutputHandler capturedStderr = capturingHandler();
         int errno = executeCommand(loggingOutputHandler(logger), multiHandler(loggingErrorHandler(logger), capturedStderr), mkdirCmdLine);
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.OperatingSystemFamily;
+
+import net.schmizz.sshj.connection.channel.direct.Session;
+
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static java.lang.String.format;
+
+/**
+ * Reads a remote file by running <code>scp -f</code> and speaking the source side of the SCP protocol with it. The
+ * contents of the file are returned as they arrive, without staging them in a local file first.
+ */
+class SshScpInputStream extends InputStream {
+
+    private static final int OK = 0;
+
+    private final Session session;
+    private final InputStream in;
+    private final OutputStream out;
+    private final String path;
+    private long remaining;
+    private boolean eof;
+
+    SshScpInputStream(Session session, OperatingSystemFamily os, String path) throws IOException {
+        this.session = session;
+        this.path = path;
+        try {
+            Session.Command command = session.exec(CmdLine.build("scp", "-f", path).toCommandLine(os, false));
+            this.in = command.getInputStream();
+            this.out = command.getOutputStream();
+            sendOk();
+            this.remaining = readFileHeader();
+            sendOk();
+            logger.debug("Receiving {} bytes of {} over scp", remaining, path);
+            if (remaining == 0) {
+                finish();
+            }
+        } catch (IOException | RuntimeException exc) {
+            closeQuietly(session);
+            throw exc;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (eof) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n < 0) {
+            throw new IOException(format("Unexpected end of stream with %d bytes of %s remaining", remaining, path));
+        }
+        remaining -= n;
+        if (remaining == 0) {
+            finish();
+        }
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return eof ? 0 : (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!eof) {
+            logger.debug("Closing scp stream of {} before the end of the file was reached", path);
+        }
+        eof = true;
+        closeQuietly(session);
+    }
+
+    private long readFileHeader() throws IOException {
+        for (;;) {
+            int type = in.read();
+            switch (type) {
+                case 'C':
+                    String header = readLine();
+                    String[] parts = header.split(" ", 3);
+                    if (parts.length != 3) {
+                        throw new IOException(format("Cannot parse scp header [C%s] for %s", header, path));
+                    }
+                    try {
+                        return Long.parseLong(parts[1]);
+                    } catch (NumberFormatException exc) {
+                        throw new IOException(format("Cannot parse size in scp header [C%s] for %s", header, path), exc);
+                    }
+                case 'T':
+                    // Modification time record, only sent when preserving times
+                    readLine();
+                    sendOk();
+                    break;
+                case 'D':
+                    readLine();
+                    throw new IOException(format("Cannot read %s because it is a directory", path));
+                case 1:
+                case 2:
+                    throw new IOException(format("Cannot read %s: %s", path, readLine()));
+                case -1:
+                    throw new IOException(format("Cannot read %s: scp ended without sending the file", path));
+                default:
+                    throw new IOException(format("Cannot read %s: unexpected scp response [%s%s]", path, (char) type, readLine()));
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        eof = true;
+        int status = in.read();
+        if (status != OK) {
+            String message = status == 1 || status == 2 ? readLine() : "unexpected status " + status;
+            throw new IOException(format("Cannot read %s: %s", path, message));
+        }
+        sendOk();
+        logger.debug("Received all bytes of {} over scp", path);
+    }
+
+    private void sendOk() throws IOException {
+        out.write(OK);
+        out.flush();
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (;;) {
+            int c = in.read();
+            if (c == '\n' || c == -1) {
+                return line.toString("UTF-8");
+            }
+            line.write(c);
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshScpInputStream.class);
+
+}
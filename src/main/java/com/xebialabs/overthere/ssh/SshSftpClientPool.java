@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import net.schmizz.sshj.sftp.SFTPClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.xebialabs.overthere.util.OverthereUtils.checkState;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+
+/**
+ * Keeps SFTP channels of one SSH connection open for reuse, so that a file operation or stream does not need to start a
+ * new SFTP subsystem for itself. Every borrowed channel is used by one thread at a time and must be returned when the
+ * caller is done with it.
+ * <p/>
+ * The pool never makes a caller wait: when no idle channel is available a new one is opened. At most
+ * <code>maxIdle</code> channels are kept open after they have been returned, the others are closed.
+ */
+abstract class SshSftpClientPool implements Closeable {
+
+    private final int maxIdle;
+
+    private final Deque<SFTPClient> idle = new ArrayDeque<SFTPClient>();
+
+    private boolean closed;
+
+    SshSftpClientPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return an idle channel, or a newly opened one if there is none.
+     */
+    SFTPClient borrow() throws IOException {
+        synchronized (this) {
+            checkState(!closed, "Cannot borrow an SFTP client from a closed pool");
+            while (!idle.isEmpty()) {
+                SFTPClient sftp = idle.pollFirst();
+                if (isUsable(sftp)) {
+                    return sftp;
+                }
+                closeQuietly(sftp);
+            }
+        }
+        return open();
+    }
+
+    /**
+     * Returns a channel to the pool. It is closed instead if it is no longer usable, if the pool already holds
+     * <code>maxIdle</code> idle channels or if the pool has been closed.
+     */
+    void giveBack(SFTPClient sftp) {
+        synchronized (this) {
+            if (!closed && idle.size() < maxIdle && isUsable(sftp)) {
+                idle.addFirst(sftp);
+                return;
+            }
+        }
+        close(sftp);
+    }
+
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        List<SFTPClient> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<SFTPClient>(idle);
+            idle.clear();
+        }
+        for (SFTPClient sftp : toClose) {
+            close(sftp);
+        }
+    }
+
+    protected boolean isUsable(SFTPClient sftp) {
+        return sftp.getSFTPEngine().getSubsystem().isOpen();
+    }
+
+    protected abstract SFTPClient open() throws IOException;
+
+    protected void close(SFTPClient sftp) {
+        logger.debug("Closing SFTP client {}", sftp);
+        closeQuietly(sftp);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshSftpClientPool.class);
+
+}
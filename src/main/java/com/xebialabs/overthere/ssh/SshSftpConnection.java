@@ -24,6 +24,7 @@ package com.xebialabs.overthere.ssh;
 
 import java.io.IOException;
 
+import net.schmizz.sshj.sftp.FileAttributes;
 import net.schmizz.sshj.sftp.SFTPClient;
 
 import org.slf4j.Logger;
@@ -34,7 +35,15 @@ import com.xebialabs.overthere.OverthereFile;
 import com.xebialabs.overthere.RuntimeIOException;
 import com.xebialabs.overthere.spi.AddressPortMapper;
 
-import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.FILE_INFO_CACHE_TTL_MILLIS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.FILE_INFO_CACHE_TTL_MILLIS_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SFTP_MAX_IDLE_CHANNELS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SFTP_MAX_IDLE_CHANNELS_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SFTP_MAX_OUTSTANDING_REQUESTS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SFTP_MAX_OUTSTANDING_REQUESTS_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SFTP_REQUEST_SIZE;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SFTP_REQUEST_SIZE_DEFAULT;
+import static com.xebialabs.overthere.util.OverthereUtils.checkArgument;
 import static java.lang.String.format;
 
 /**
@@ -42,10 +51,30 @@ import static java.lang.String.format;
  */
 abstract class SshSftpConnection extends SshConnection {
 
-    private SFTPClient sharedSftpClient;
+    private final SshSftpClientPool sftpClients;
+
+    protected int sftpMaxOutstandingRequests;
+
+    protected int sftpRequestSize;
+
+    protected SshFileInfoCache<FileAttributes> fileInfoCache;
 
     public SshSftpConnection(String type, ConnectionOptions options, AddressPortMapper mapper) {
         super(type, options, mapper);
+        sftpMaxOutstandingRequests = options.getInteger(SFTP_MAX_OUTSTANDING_REQUESTS, SFTP_MAX_OUTSTANDING_REQUESTS_DEFAULT);
+        checkArgument(sftpMaxOutstandingRequests >= 1, "Value for %s must be at least 1", SFTP_MAX_OUTSTANDING_REQUESTS);
+        sftpRequestSize = options.getInteger(SFTP_REQUEST_SIZE, SFTP_REQUEST_SIZE_DEFAULT);
+        checkArgument(sftpRequestSize >= 1024, "Value for %s must be at least 1024", SFTP_REQUEST_SIZE);
+        int sftpMaxIdleChannels = options.getInteger(SFTP_MAX_IDLE_CHANNELS, SFTP_MAX_IDLE_CHANNELS_DEFAULT);
+        checkArgument(sftpMaxIdleChannels >= 0, "Value for %s must not be negative", SFTP_MAX_IDLE_CHANNELS);
+        sftpClients = new SshSftpClientPool(sftpMaxIdleChannels) {
+            @Override
+            protected SFTPClient open() throws IOException {
+                logger.debug("Opening SFTP client to {}", SshSftpConnection.this);
+                return getSshClient().newSFTPClient();
+            }
+        };
+        fileInfoCache = new SshFileInfoCache<FileAttributes>(options.getInteger(FILE_INFO_CACHE_TTL_MILLIS, FILE_INFO_CACHE_TTL_MILLIS_DEFAULT), os.getFileSeparator());
     }
 
     @Override
@@ -55,10 +84,7 @@ abstract class SshSftpConnection extends SshConnection {
 
     @Override
     public void doClose() {
-        if (sharedSftpClient != null) {
-            disconnectSftp(sharedSftpClient);
-            sharedSftpClient = null;
-        }
+        sftpClients.close();
 
         super.doClose();
     }
@@ -68,25 +94,35 @@ abstract class SshSftpConnection extends SshConnection {
         return new SshSftpFile(this, hostPath);
     }
 
-    SFTPClient getSharedSftpClient() {
-        if ( sharedSftpClient == null ) {
-            sharedSftpClient = connectSftp();
-        }
-        return sharedSftpClient;
-    }
-
-    SFTPClient connectSftp() {
-        logger.debug("Opening SFTP client to {}", this);
+    /**
+     * Borrows an SFTP client that is not used by any other thread until it is given back with
+     * {@link #returnSftpClient(SFTPClient)}.
+     */
+    SFTPClient borrowSftpClient() {
         try {
-            return getSshClient().newSFTPClient();
+            return sftpClients.borrow();
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot start SFTP session for %s", this), e);
         }
     }
 
-    void disconnectSftp(SFTPClient sftp) {
-        logger.debug("Closing SFTP client to {}", this);
-        closeQuietly(sftp);
+    void returnSftpClient(SFTPClient sftp) {
+        sftpClients.giveBack(sftp);
+    }
+
+    /**
+     * Discards the cached attributes of a path that is modified through this connection.
+     */
+    void invalidateFileInfo(String path) {
+        fileInfoCache.invalidate(path);
+    }
+
+    /**
+     * @return the size of the buffer of SFTP streams. It holds at least one request, otherwise the buffer size would limit
+     *         the request size.
+     */
+    int getSftpStreamBufferSize() {
+        return Math.max(streamBufferSize, sftpRequestSize);
     }
 
     protected abstract String pathToSftpPath(String path);
@@ -29,6 +29,8 @@ import net.schmizz.sshj.xfer.FilePermission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -44,6 +46,13 @@ import static java.lang.String.format;
  */
 class SshSftpFile extends SshFile<SshSftpConnection> {
 
+    /**
+     * The attributes of this file as they were when this object last statted it. They are kept until this file is
+     * modified through this object or {@link #refresh()} is called. Attributes found in the file info cache of the
+     * connection, such as the ones from a directory listing, are never copied here, so that they expire.
+     */
+    private FileAttributes attributes;
+
     public SshSftpFile(SshSftpConnection connection, String path) {
         super(connection, path);
     }
@@ -54,12 +63,23 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
 
     @Override
     public boolean exists() {
+        if (getKnownAttributes() != null) {
+            return true;
+        }
+
         logger.debug("Checking {} for existence", this);
 
+        SFTPClient sftp = connection.borrowSftpClient();
         try {
-            return connection.getSharedSftpClient().statExistence(getSftpPath()) != null;
+            FileAttributes attrs = sftp.statExistence(getSftpPath());
+            if (attrs != null) {
+                setAttributes(attrs);
+            }
+            return attrs != null;
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot check existence of file %s", this), e);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
@@ -103,22 +123,51 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
     }
 
     protected FileAttributes stat() {
+        FileAttributes known = getKnownAttributes();
+        if (known != null) {
+            return known;
+        }
+
         logger.debug("Statting {}", this);
 
+        SFTPClient sftp = connection.borrowSftpClient();
         try {
-            return connection.getSharedSftpClient().stat(getSftpPath());
+            FileAttributes attrs = sftp.stat(getSftpPath());
+            setAttributes(attrs);
+            return attrs;
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot stat %s", this), e);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
+    /**
+     * @return the attributes cached for the path of this file by the connection or, if they have expired, the attributes
+     * of this object.
+     */
+    private FileAttributes getKnownAttributes() {
+        FileAttributes cached = connection.fileInfoCache.get(getPath());
+        if (cached != null) {
+            logger.trace("Using cached attributes of {}", this);
+            return cached;
+        }
+        return attributes;
+    }
+
+    private void setAttributes(FileAttributes attrs) {
+        attributes = attrs;
+        connection.fileInfoCache.put(getPath(), attrs);
+    }
+
     @Override
     public List<OverthereFile> listFiles() {
         logger.debug("Listing directory {}", this);
 
+        SFTPClient sftp = connection.borrowSftpClient();
         try {
             // read files from host
-            List<RemoteResourceInfo> ls = connection.getSharedSftpClient().ls(getSftpPath());
+            List<RemoteResourceInfo> ls = sftp.ls(getSftpPath());
 
             // copy files to list, skipping . and ..
             List<OverthereFile> files = new ArrayList<OverthereFile>();
@@ -127,43 +176,102 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
                 if (filename.equals(".") || filename.equals("..")) {
                     continue;
                 }
-                files.add(getFile(filename));
+                SshSftpFile file = (SshSftpFile) getFile(filename);
+                // Symbolic links are listed with their own attributes, but stat() follows them. The attributes of the
+                // other entries are only kept by the file info cache, so that they expire like the ones retrieved by stat()
+                // and are not kept at all if that cache is disabled.
+                if (l.getAttributes().getType() != FileMode.Type.SYMLINK) {
+                    connection.fileInfoCache.put(file.getPath(), l.getAttributes());
+                }
+                files.add(file);
             }
 
             return files;
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot list directory %s", this), e);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
+    /**
+     * Forgets the attributes of this file, because it is about to be modified.
+     */
+    private void invalidateAttributes() {
+        attributes = null;
+        connection.invalidateFileInfo(getPath());
+    }
+
+    @Override
+    public void refresh() {
+        invalidateAttributes();
+    }
+
     @Override
     protected void copyFrom(OverthereFile source) {
-        SFTPFileTransfer fileTransfer = connection.getSharedSftpClient().getFileTransfer();
         try {
-            fileTransfer.upload(new OverthereFileLocalSourceFile(source), getSftpPath());
+            upload(source);
+        } finally {
+            invalidateAttributes();
+        }
+    }
+
+    private void upload(OverthereFile source) {
+        if (uploadAsTar(source)) {
+            return;
+        }
+
+        if (connection.uploadParallelism > 1 && source.isDirectory()) {
+            new SshParallelUpload(connection.uploadParallelism) {
+                @Override
+                protected void uploadFile(OverthereFile sourceFile, OverthereFile targetFile) throws IOException {
+                    SFTPClient sftp = connection.borrowSftpClient();
+                    try {
+                        sftp.getFileTransfer().upload(new OverthereFileLocalSourceFile(sourceFile), ((SshSftpFile) targetFile).getSftpPath());
+                    } finally {
+                        connection.returnSftpClient(sftp);
+                    }
+                }
+            }.upload(source, this);
+            return;
+        }
+
+        SFTPClient sftp = connection.borrowSftpClient();
+        try {
+            sftp.getFileTransfer().upload(new OverthereFileLocalSourceFile(source), getSftpPath());
         } catch (IOException ioe) {
             throw new RuntimeIOException(format("Cannot upload %s to %s", source, this), ioe);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
     @Override
     public void mkdir() {
         logger.debug("Creating directory {}", this);
+        invalidateAttributes();
 
+        SFTPClient sftp = connection.borrowSftpClient();
         try {
-            connection.getSharedSftpClient().mkdir(getSftpPath());
+            sftp.mkdir(getSftpPath());
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot create directory %s", this), e);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
     @Override
     public void mkdirs() {
         logger.debug("Creating directories {}", this);
+        invalidateAttributes();
+        SFTPClient sftp = connection.borrowSftpClient();
         try {
-            connection.getSharedSftpClient().mkdirs(getSftpPath());
+            sftp.mkdirs(getSftpPath());
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot create directories %s", this), e);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
@@ -174,10 +282,15 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
         if (dest instanceof SshSftpFile) {
             SshSftpFile sftpDest = (SshSftpFile) dest;
             if (sftpDest.getConnection() == getConnection()) {
+                invalidateAttributes();
+                sftpDest.invalidateAttributes();
+                SFTPClient sftp = connection.borrowSftpClient();
                 try {
-                    connection.getSharedSftpClient().rename(getSftpPath(), sftpDest.getSftpPath());
+                    sftp.rename(getSftpPath(), sftpDest.getSftpPath());
                 } catch (IOException e) {
                     throw new RuntimeIOException(format("Cannot move/rename file/directory %s to %s", this, dest), e);
+                } finally {
+                    connection.returnSftpClient(sftp);
                 }
             } else {
                 throw new RuntimeIOException(format(
@@ -193,52 +306,71 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
     @Override
     public void setExecutable(boolean executable) {
         logger.debug("Setting execute permission on {} to {}", this, executable);
+        invalidateAttributes();
 
+        SFTPClient sftp = connection.borrowSftpClient();
         try {
-            int permissionsMask = connection.getSharedSftpClient().stat(getSftpPath()).getMode().getPermissionsMask();
+            int permissionsMask = sftp.stat(getSftpPath()).getMode().getPermissionsMask();
             if (executable) {
                 permissionsMask |= 0111;
             } else {
                 permissionsMask &= ~0111;
             }
-            connection.getSharedSftpClient().chmod(getPath(), permissionsMask);
+            sftp.chmod(getPath(), permissionsMask);
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot set execute permission on %s to %b", this, executable), e);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
     @Override
     protected void deleteFile() {
         logger.debug("Deleting file {}", this);
+        invalidateAttributes();
 
+        SFTPClient sftp = connection.borrowSftpClient();
         try {
-            connection.getSharedSftpClient().rm(getSftpPath());
+            sftp.rm(getSftpPath());
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot delete file %s", this), e);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
     @Override
     protected void deleteDirectory() {
         logger.debug("Deleting directory {}", this);
+        invalidateAttributes();
 
+        SFTPClient sftp = connection.borrowSftpClient();
         try {
-            connection.getSharedSftpClient().rmdir(getSftpPath());
+            sftp.rmdir(getSftpPath());
         } catch (IOException e) {
             throw new RuntimeIOException(format("Cannot delete directory %s", this), e);
+        } finally {
+            connection.returnSftpClient(sftp);
         }
     }
 
+    /**
+     * Opens a stream that keeps up to <code>sftpMaxOutstandingRequests</code> read requests of <code>sftpRequestSize</code>
+     * bytes in flight, so that the throughput does not depend on the round trip time.
+     */
     @Override
     public InputStream getInputStream() {
         logger.debug("Opening SFTP input stream for {}", this);
 
+        final SFTPClient sftp = connection.borrowSftpClient();
         try {
-            final SFTPClient sftp = connection.connectSftp();
             final RemoteFile remoteFile = sftp.open(getSftpPath(), EnumSet.of(OpenMode.READ));
-            final InputStream wrapped = remoteFile.new RemoteFileInputStream();
+            final int requestSize = connection.sftpRequestSize;
+            final InputStream wrapped = connection.sftpMaxOutstandingRequests > 1
+                    ? remoteFile.new ReadAheadRemoteFileInputStream(connection.sftpMaxOutstandingRequests - 1)
+                    : remoteFile.new RemoteFileInputStream();
 
-            return asBuffered(new InputStream() {
+            return new BufferedInputStream(new InputStream() {
 
                 @Override
                 public int read() throws IOException {
@@ -247,12 +379,13 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
 
                 @Override
                 public int read(byte[] b) throws IOException {
-                    return wrapped.read(b);
+                    return read(b, 0, b.length);
                 }
 
                 @Override
                 public int read(byte[] b, int off, int len) throws IOException {
-                    return wrapped.read(b, off, len);
+                    // The length of a read determines the size of the SFTP requests sent for it
+                    return wrapped.read(b, off, Math.min(len, requestSize));
                 }
 
                 @Override
@@ -265,21 +398,6 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
                     return wrapped.available();
                 }
 
-                @Override
-                public boolean markSupported() {
-                    return wrapped.markSupported();
-                }
-
-                @Override
-                public void mark(int readlimit) {
-                    wrapped.mark(readlimit);
-                }
-
-                @Override
-                public void reset() throws IOException {
-                    wrapped.reset();
-                }
-
                 @Override
                 public void close() throws IOException {
                     logger.info("Closing SFTP input stream for {}", SshSftpFile.this);
@@ -287,25 +405,33 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
                         wrapped.close();
                     } finally {
                         closeQuietly(remoteFile);
-                        connection.disconnectSftp(sftp);
+                        connection.returnSftpClient(sftp);
                     }
                 }
-            });
+            }, connection.getSftpStreamBufferSize());
         } catch (IOException e) {
+            connection.returnSftpClient(sftp);
             throw new RuntimeIOException("Cannot read from file " + this, e);
         }
     }
 
+    /**
+     * Opens a stream that sends write requests of at most <code>sftpRequestSize</code> bytes without waiting for their
+     * replies, as long as no more than <code>sftpMaxOutstandingRequests</code> are unacknowledged. Closing the stream waits
+     * for the remaining replies.
+     */
     @Override
     public OutputStream getOutputStream() {
         logger.debug("Opening SFTP ouput stream for {}", this);
+        invalidateAttributes();
 
+        final SFTPClient sftp = connection.borrowSftpClient();
         try {
-            final SFTPClient sftp = connection.connectSftp();
             final RemoteFile remoteFile = sftp.open(getSftpPath(), EnumSet.of(OpenMode.CREAT, OpenMode.WRITE, OpenMode.TRUNC));
-            final OutputStream wrapped = remoteFile.new RemoteFileOutputStream();
+            final int requestSize = connection.sftpRequestSize;
+            final OutputStream wrapped = remoteFile.new RemoteFileOutputStream(0, connection.sftpMaxOutstandingRequests - 1);
 
-            return asBuffered(new OutputStream() {
+            return new BufferedOutputStream(new OutputStream() {
 
                 @Override
                 public void write(int b) throws IOException {
@@ -314,12 +440,18 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
 
                 @Override
                 public void write(byte[] b) throws IOException {
-                    wrapped.write(b);
+                    write(b, 0, b.length);
                 }
 
                 @Override
                 public void write(byte[] b, int off, int len) throws IOException {
-                    wrapped.write(b, off, len);
+                    // Every write is sent as one SFTP request
+                    while (len > 0) {
+                        int n = Math.min(len, requestSize);
+                        wrapped.write(b, off, n);
+                        off += n;
+                        len -= n;
+                    }
                 }
 
                 @Override
@@ -334,11 +466,13 @@ class SshSftpFile extends SshFile<SshSftpConnection> {
                         wrapped.close();
                     } finally {
                         closeQuietly(remoteFile);
-                        connection.disconnectSftp(sftp);
+                        connection.returnSftpClient(sftp);
+                        invalidateAttributes();
                     }
                 }
-            });
+            }, connection.getSftpStreamBufferSize());
         } catch (IOException e) {
+            connection.returnSftpClient(sftp);
             throw new RuntimeIOException(format("Cannot write to %s", this), e);
         }
     }
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads an output stream of a remote process, e.g. its stderr while its stdin or stdout is being streamed, so that the
+ * process never blocks on a full stream. The first part of the output is kept to explain a failure.
+ */
+class SshStreamDrainer implements Runnable {
+
+    private static final int MAX_OUTPUT = 64 * 1024;
+
+    private final InputStream in;
+
+    private final String name;
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private SshStreamDrainer(InputStream in, String name) {
+        this.in = in;
+        this.name = name;
+    }
+
+    /**
+     * Starts draining a stream.
+     *
+     * @param in       the stream to drain.
+     * @param name     the name of the stream, used for logging.
+     * @param executor the executor to drain the stream on, usually the
+     *                 {@link com.xebialabs.overthere.spi.BaseOverthereConnection#getOutputPumpExecutor() output pump executor} of the connection.
+     * @return the drainer.
+     */
+    static SshStreamDrainer drain(InputStream in, String name, Executor executor) {
+        SshStreamDrainer drainer = new SshStreamDrainer(in, name);
+        executor.execute(drainer);
+        return drainer;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[1024];
+        try {
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                synchronized (output) {
+                    if (output.size() < MAX_OUTPUT) {
+                        output.write(buffer, 0, n);
+                    }
+                }
+            }
+        } catch (IOException exc) {
+            logger.debug("Cannot read " + name, exc);
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * @return the output collected so far, after waiting a short while for the stream to be closed.
+     */
+    String awaitOutput() {
+        try {
+            finished.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (output) {
+            return output.toString().trim();
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshStreamDrainer.class);
+
+}
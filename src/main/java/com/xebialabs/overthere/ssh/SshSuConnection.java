@@ -43,6 +43,8 @@ import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_OVERRIDE_UMASK
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_PASSWORD;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_PASSWORD_PROMPT_REGEX;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_PASSWORD_PROMPT_REGEX_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_PASSWORD_PROMPT_SCAN_LIMIT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_PASSWORD_PROMPT_SCAN_LIMIT_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_PRESERVE_ATTRIBUTES_ON_COPY_FROM_TEMP_FILE;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_PRESERVE_ATTRIBUTES_ON_COPY_FROM_TEMP_FILE_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SU_PRESERVE_ATTRIBUTES_ON_COPY_TO_TEMP_FILE;
@@ -66,6 +68,7 @@ class SshSuConnection extends SshElevatedUserConnection {
         elevatedUsername = options.get(SU_USERNAME);
         elevatedPassword = options.get(SU_PASSWORD);
         elevatedPasswordPromptRegex = options.get(SU_PASSWORD_PROMPT_REGEX, SU_PASSWORD_PROMPT_REGEX_DEFAULT);
+        elevatedPasswordPromptScanLimit = options.getInteger(SU_PASSWORD_PROMPT_SCAN_LIMIT, SU_PASSWORD_PROMPT_SCAN_LIMIT_DEFAULT);
 
         elevationCommandPrefix = options.get(SU_COMMAND_PREFIX, SU_COMMAND_PREFIX_DEFAULT);
         quoteCommand = options.getBoolean(SU_QUOTE_COMMAND, SU_QUOTE_COMMAND_DEFAULT);
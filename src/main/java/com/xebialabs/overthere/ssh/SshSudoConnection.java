@@ -46,11 +46,19 @@ import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PRESERVE_ATT
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PRESERVE_ATTRIBUTES_ON_COPY_TO_TEMP_FILE_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_QUOTE_COMMAND;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_QUOTE_COMMAND_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_READ_FILE_COMMAND;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_READ_FILE_COMMAND_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_STREAM_READS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_STREAM_READS_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_STREAM_WRITES;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_STREAM_WRITES_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_TEMP_MKDIRS_COMMAND;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_TEMP_MKDIRS_COMMAND_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_TEMP_MKDIR_COMMAND;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_TEMP_MKDIR_COMMAND_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_USERNAME;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_WRITE_FILE_COMMAND;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_WRITE_FILE_COMMAND_DEFAULT;
 
 /**
  * A connection to a Unix host using SSH w/ SUDO.
@@ -69,10 +77,14 @@ class SshSudoConnection extends SshElevatedUserConnection {
         preserveAttributesOnCopyFromTempFile = options.getBoolean(SUDO_PRESERVE_ATTRIBUTES_ON_COPY_FROM_TEMP_FILE, SUDO_PRESERVE_ATTRIBUTES_ON_COPY_FROM_TEMP_FILE_DEFAULT);
         preserveAttributesOnCopyToTempFile = options.getBoolean(SUDO_PRESERVE_ATTRIBUTES_ON_COPY_TO_TEMP_FILE, SUDO_PRESERVE_ATTRIBUTES_ON_COPY_TO_TEMP_FILE_DEFAULT);
         overrideUmask = options.getBoolean(SUDO_OVERRIDE_UMASK, SUDO_OVERRIDE_UMASK_DEFAULT);
+        streamReads = options.getBoolean(SUDO_STREAM_READS, SUDO_STREAM_READS_DEFAULT);
+        streamWrites = options.getBoolean(SUDO_STREAM_WRITES, SUDO_STREAM_WRITES_DEFAULT);
 
         copyFromTempFileCommand = options.get(SUDO_COPY_FROM_TEMP_FILE_COMMAND, preserveAttributesOnCopyFromTempFile ? SUDO_COPY_FROM_TEMP_FILE_COMMAND_DEFAULT_PRESERVE_ATTRIBUTES : SUDO_COPY_FROM_TEMP_FILE_COMMAND_DEFAULT_NO_PRESERVE_ATTRIBUTES);
         copyToTempFileCommand = options.get(SUDO_COPY_TO_TEMP_FILE_COMMAND, preserveAttributesOnCopyToTempFile ? SUDO_COPY_TO_TEMP_FILE_COMMAND_DEFAULT_PRESERVE_ATTRIBUTES : SUDO_COPY_TO_TEMP_FILE_COMMAND_DEFAULT_NO_PRESERVE_ATTRIBUTES);
         overrideUmaskCommand = options.get(SUDO_OVERRIDE_UMASK_COMMAND, SUDO_OVERRIDE_UMASK_COMMAND_DEFAULT);
+        elevatedReadFileCommand = options.get(SUDO_READ_FILE_COMMAND, SUDO_READ_FILE_COMMAND_DEFAULT);
+        elevatedWriteFileCommand = options.get(SUDO_WRITE_FILE_COMMAND, SUDO_WRITE_FILE_COMMAND_DEFAULT);
         tempMkdirCommand = options.get(SUDO_TEMP_MKDIR_COMMAND, SUDO_TEMP_MKDIR_COMMAND_DEFAULT);
         tempMkdirsCommand = options.get(SUDO_TEMP_MKDIRS_COMMAND, SUDO_TEMP_MKDIRS_COMMAND_DEFAULT);
     }
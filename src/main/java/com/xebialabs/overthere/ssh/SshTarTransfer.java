@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.OverthereFile;
+import com.xebialabs.overthere.OverthereProcess;
+import com.xebialabs.overthere.RuntimeIOException;
+
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static com.xebialabs.overthere.util.OverthereUtils.write;
+import static java.lang.String.format;
+
+/**
+ * Transfers a directory tree to or from a remote host as a single tar stream, written to the stdin of a remote
+ * <code>tar</code> process or read from its stdout. A tree of many small files then takes one command instead of a
+ * command or session per file.
+ */
+final class SshTarTransfer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SshTarTransfer() {
+    }
+
+    /**
+     * Copies the contents of a source directory into a remote directory, which is created if it does not exist yet.
+     */
+    static void upload(OverthereFile sourceDir, SshFile<?> targetDir) {
+        logger.debug("Uploading {} to {} as a tar stream", sourceDir, targetDir);
+        if (!targetDir.exists()) {
+            targetDir.mkdir();
+        }
+
+        CmdLine tarCmdLine = CmdLine.build().addTemplatedFragment(targetDir.getConnection().tarExtractCommand, targetDir.getPath());
+        OverthereProcess process = targetDir.startProcess(tarCmdLine);
+        SshStreamDrainer stderr = SshStreamDrainer.drain(process.getStderr(), "stderr of tar", targetDir.getConnection().getOutputPumpExecutor());
+        try {
+            TarArchiveOutputStream tar = new TarArchiveOutputStream(new BufferedOutputStream(process.getStdin(), BUFFER_SIZE));
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            addContents(tar, sourceDir, "");
+            tar.close();
+            drain(process.getStdout());
+        } catch (IOException | RuntimeIOException exc) {
+            process.destroy();
+            throw new RuntimeIOException(format("Cannot upload %s to %s: %s", sourceDir, targetDir, stderr.awaitOutput()), exc);
+        } catch (RuntimeException | Error exc) {
+            process.destroy();
+            throw exc;
+        }
+        checkExitValue(process, stderr, format("Cannot upload %s to %s", sourceDir, targetDir));
+    }
+
+    private static void addContents(TarArchiveOutputStream tar, OverthereFile dir, String prefix) throws IOException {
+        for (OverthereFile f : dir.listFiles()) {
+            String name = prefix + f.getName();
+            if (f.isDirectory()) {
+                TarArchiveEntry entry = new TarArchiveEntry(name + "/");
+                entry.setMode(TarArchiveEntry.DEFAULT_DIR_MODE);
+                entry.setModTime(f.lastModified());
+                tar.putArchiveEntry(entry);
+                tar.closeArchiveEntry();
+                addContents(tar, f, name + "/");
+            } else {
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setMode(f.canExecute() ? 0100755 : TarArchiveEntry.DEFAULT_FILE_MODE);
+                entry.setModTime(f.lastModified());
+                entry.setSize(f.length());
+                tar.putArchiveEntry(entry);
+                InputStream in = f.getInputStream();
+                try {
+                    write(in, tar);
+                } finally {
+                    closeQuietly(in);
+                }
+                tar.closeArchiveEntry();
+            }
+        }
+    }
+
+    /**
+     * Copies the contents of a remote directory into a target directory, which is created if it does not exist yet.
+     */
+    static void download(SshFile<?> sourceDir, OverthereFile targetDir) {
+        logger.debug("Downloading {} to {} as a tar stream", sourceDir, targetDir);
+        if (!targetDir.exists()) {
+            targetDir.mkdir();
+        }
+
+        CmdLine tarCmdLine = CmdLine.build().addTemplatedFragment(sourceDir.getConnection().tarCreateCommand, sourceDir.getPath());
+        OverthereProcess process = sourceDir.startProcess(tarCmdLine);
+        SshStreamDrainer stderr = SshStreamDrainer.drain(process.getStderr(), "stderr of tar", sourceDir.getConnection().getOutputPumpExecutor());
+        try {
+            InputStream stdout = new BufferedInputStream(process.getStdout(), BUFFER_SIZE);
+            TarArchiveInputStream tar = new TarArchiveInputStream(stdout);
+            for (TarArchiveEntry entry; (entry = tar.getNextTarEntry()) != null; ) {
+                extract(tar, entry, targetDir);
+            }
+            // read the padding after the end of the archive, so that tar can exit
+            drain(stdout);
+            closeQuietly(process.getStdin());
+        } catch (IOException | RuntimeIOException exc) {
+            process.destroy();
+            throw new RuntimeIOException(format("Cannot download %s to %s: %s", sourceDir, targetDir, stderr.awaitOutput()), exc);
+        } catch (RuntimeException | Error exc) {
+            process.destroy();
+            throw exc;
+        }
+        checkExitValue(process, stderr, format("Cannot download %s to %s", sourceDir, targetDir));
+    }
+
+    private static void extract(TarArchiveInputStream tar, TarArchiveEntry entry, OverthereFile targetDir) throws IOException {
+        OverthereFile target = targetDir;
+        for (String part : entry.getName().split("/")) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                throw new RuntimeIOException(format("Tar stream contains an entry outside of the target directory: %s", entry.getName()));
+            }
+            target = target.getFile(part);
+        }
+
+        if (entry.isDirectory()) {
+            if (!target.exists()) {
+                target.mkdir();
+            }
+        } else if (entry.isFile()) {
+            OutputStream out = target.getOutputStream();
+            try {
+                write(tar, out);
+            } catch (RuntimeException exc) {
+                closeQuietly(out);
+                throw exc;
+            }
+            // some output streams only report a failed write when they are closed
+            out.close();
+            if ((entry.getMode() & 0100) != 0) {
+                target.setExecutable(true);
+            }
+        } else {
+            logger.warn("Skipping {} in tar stream because it is neither a regular file nor a directory", entry.getName());
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (in.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    private static void checkExitValue(OverthereProcess process, SshStreamDrainer stderr, String message) {
+        int exitValue;
+        try {
+            exitValue = process.waitFor();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new RuntimeIOException(message + ": interrupted while waiting for tar to finish", exc);
+        }
+        String errors = stderr.awaitOutput();
+        if (exitValue != 0) {
+            throw new RuntimeIOException(format("%s: %s (exitValue=%d)", message, errors, exitValue));
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SshTarTransfer.class);
+
+}
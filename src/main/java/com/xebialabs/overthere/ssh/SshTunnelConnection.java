@@ -26,6 +26,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -55,14 +56,19 @@ import net.schmizz.sshj.transport.TransportException;
 import javax.net.SocketFactory;
 
 import static com.xebialabs.overthere.util.OverthereUtils.checkState;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.CHANNEL_SOCKETS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.CHANNEL_SOCKETS_DEFAULT;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.PORT_ALLOCATION_RANGE_START;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.PORT_ALLOCATION_RANGE_START_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.PORT_FORWARDING_THREADS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.PORT_FORWARDING_THREADS_DEFAULT;
 import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
 import static java.lang.String.format;
 import static java.net.InetSocketAddress.createUnresolved;
 
 /**
- * A connection to a 'jump station' host using SSH w/ local port forwards.
+ * A connection to a 'jump station' host using SSH w/ local port forwards, or w/ sockets that are connected over SSH
+ * channels when {@link SshConnectionBuilder#CHANNEL_SOCKETS} is set.
  */
 public class SshTunnelConnection extends SshConnection implements AddressPortMapper {
 
@@ -76,22 +82,38 @@ public class SshTunnelConnection extends SshConnection implements AddressPortMap
 
     private int startPortRange;
 
+    private int portForwardingThreads;
+
+    private SshPortForwardingEngine portForwardingEngine;
+
+    private boolean channelSockets;
+
+    private SocketFactory channelSocketFactory;
+
     private final ReentrantLock lock = new ReentrantLock();
 
     public SshTunnelConnection(final String protocol, final ConnectionOptions options, final AddressPortMapper mapper) {
         super(protocol, options, mapper);
         this.startPortRange = options.getInteger(PORT_ALLOCATION_RANGE_START, PORT_ALLOCATION_RANGE_START_DEFAULT);
+        this.portForwardingThreads = options.getInteger(PORT_FORWARDING_THREADS, PORT_FORWARDING_THREADS_DEFAULT);
+        this.channelSockets = options.getBoolean(CHANNEL_SOCKETS, CHANNEL_SOCKETS_DEFAULT);
     }
 
     @Override
     protected void connect() {
         super.connect();
         checkState(sshClient != null, "Should have set an SSH client when connected");
+        if (channelSockets) {
+            channelSocketFactory = new SshChannelSocketFactory(sshClient.getConnection());
+        }
     }
 
     @Override
     public void doClose() {
         logger.debug("Closing tunnel.");
+        if (portForwardingEngine != null) {
+            portForwardingEngine.close();
+        }
         for (PortForwarder portForwarder : portForwarders) {
             closeQuietly(portForwarder);
         }
@@ -101,14 +123,22 @@ public class SshTunnelConnection extends SshConnection implements AddressPortMap
 
     @Override
     public InetSocketAddress map(InetSocketAddress address) {
+        if (channelSockets) {
+            return address;
+        }
+
         lock.lock();
         try {
             if (localPortForwards.containsKey(address)) {
                 return localPortForwards.get(address);
             }
 
-            ServerSocket serverSocket = PORT_MANAGER.get().bindToNextFreePort(startPortRange);
-            portForwarders.add(startForwarder(address, serverSocket));
+            ServerSocket serverSocket = PORT_MANAGER.get().bindToNextFreePort(startPortRange, portForwardingThreads > 0);
+            if (portForwardingThreads > 0) {
+                getPortForwardingEngine().forward(serverSocket.getChannel(), address);
+            } else {
+                portForwarders.add(startForwarder(address, serverSocket));
+            }
 
             InetSocketAddress localAddress = createUnresolved("localhost", serverSocket.getLocalPort());
             localPortForwards.put(address, localAddress);
@@ -120,9 +150,24 @@ public class SshTunnelConnection extends SshConnection implements AddressPortMap
 
     @Override
     public SocketFactory socketFactory() {
+        if (channelSockets) {
+            return channelSocketFactory;
+        }
         return SocketFactory.getDefault();
     }
 
+    private SshPortForwardingEngine getPortForwardingEngine() {
+        if (portForwardingEngine == null) {
+            try {
+                portForwardingEngine = new SshPortForwardingEngine(sshClient.getConnection(), portForwardingThreads, toString());
+            } catch (IOException exc) {
+                throw new RuntimeIOException(format("Cannot start port forwarding for %s", this), exc);
+            }
+            logger.info("Started {} port forwarding thread(s) for {}", portForwardingThreads, this);
+        }
+        return portForwardingEngine;
+    }
+
     private PortForwarder startForwarder(InetSocketAddress remoteAddress, ServerSocket serverSocket) {
         PortForwarder forwarderThread = new PortForwarder(sshClient, remoteAddress, serverSocket);
         logger.info("Starting {}", forwarderThread.getName());
@@ -219,13 +264,21 @@ public class SshTunnelConnection extends SshConnection implements AddressPortMap
         private ReentrantLock lock = new ReentrantLock();
 
         ServerSocket bindToNextFreePort(int startFrom) {
+            return bindToNextFreePort(startFrom, false);
+        }
+
+        /**
+         * @param selectable whether the server socket should have a {@link ServerSocketChannel}. Sockets accepted from it
+         *                   cannot be read and written concurrently in blocking mode, so only selector based forwarding can use it.
+         */
+        ServerSocket bindToNextFreePort(int startFrom, boolean selectable) {
             lock.lock();
             try {
                 int firstPort = Math.max(startFrom, lastBoundPort.get() + 1);
                 int port = firstPort;
                 for (; ; ) {
                     logger.trace("Trying to bind to port {}", port);
-                    ServerSocket socket = tryBind(port);
+                    ServerSocket socket = selectable ? tryBindChannel(port) : tryBind(port);
                     if (socket != null) {
                         logger.debug("Successfully bound to port {}.", port);
                         lastBoundPort.set(port);
@@ -257,6 +310,20 @@ public class SshTunnelConnection extends SshConnection implements AddressPortMap
                 return null;
             }
         }
+
+        protected ServerSocket tryBindChannel(int localPort) {
+            ServerSocketChannel channel = null;
+            try {
+                channel = ServerSocketChannel.open();
+                ServerSocket ss = channel.socket();
+                ss.setReuseAddress(true);
+                ss.bind(new InetSocketAddress("localhost", localPort));
+                return ss;
+            } catch (IOException e) {
+                closeQuietly(channel);
+                return null;
+            }
+        }
     }
 
     private static final Logger logger = LoggerFactory.getLogger(SshTunnelConnection.class);
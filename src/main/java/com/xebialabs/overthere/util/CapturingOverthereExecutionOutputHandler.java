@@ -22,7 +22,7 @@
  */
 package com.xebialabs.overthere.util;
 
-import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -34,13 +34,18 @@ import static java.util.Collections.unmodifiableList;
 /**
  * An implementation of the {@link com.xebialabs.overthere.OverthereExecutionOutputHandler} that captures the output in variables.
  */
-public class CapturingOverthereExecutionOutputHandler implements OverthereExecutionOutputHandler {
+public class CapturingOverthereExecutionOutputHandler implements OverthereExecutionOutputChunkHandler {
 
     private List<String> outputLines = Collections.synchronizedList(new ArrayList<String>());
 
     private CapturingOverthereExecutionOutputHandler() {
     }
 
+    @Override
+    public void handleChars(final char[] chars, final int offset, final int length) {
+        // no-op
+    }
+
     @Override
     public void handleChar(final char c) {
         // no-op
@@ -24,13 +24,13 @@ package com.xebialabs.overthere.util;
 
 import org.slf4j.Logger;
 
-import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
 
 /**
  * Implementation of the {@link com.xebialabs.overthere.OverthereExecutionOutputHandler} interface that sends the output to the specified logger.
  * Regular output will be logged at the INFO level, error output at the ERROR level.
  */
-public class LoggingOverthereExecutionOutputHandler implements OverthereExecutionOutputHandler {
+public class LoggingOverthereExecutionOutputHandler implements OverthereExecutionOutputChunkHandler {
 
     /**
      * Enum that controls to which level the message gets sent.
@@ -59,6 +59,11 @@ public class LoggingOverthereExecutionOutputHandler implements OverthereExecutio
         this.level = level;
     }
 
+    @Override
+    public void handleChars(final char[] chars, final int offset, final int length) {
+        // no-op
+    }
+
     @Override
     public void handleChar(final char c) {
         // no-op
@@ -22,18 +22,27 @@
  */
 package com.xebialabs.overthere.util;
 
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
 import com.xebialabs.overthere.OverthereExecutionOutputHandler;
 
+import static com.xebialabs.overthere.util.OverthereExecutionOutputChunkAdapter.chunkHandler;
+
 /**
  * Implementation of the {@link com.xebialabs.overthere.OverthereExecutionOutputHandler} interface that sends the output to one or more other
  * {@link com.xebialabs.overthere.OverthereProcessOutputHandler handlers}.
  */
-public class MultipleOverthereExecutionOutputHandler implements OverthereExecutionOutputHandler {
+public class MultipleOverthereExecutionOutputHandler implements OverthereExecutionOutputChunkHandler {
 
     private final OverthereExecutionOutputHandler[] handlers;
 
+    private final OverthereExecutionOutputChunkHandler[] chunkHandlers;
+
     private MultipleOverthereExecutionOutputHandler(final OverthereExecutionOutputHandler... handlers) {
         this.handlers = handlers;
+        this.chunkHandlers = new OverthereExecutionOutputChunkHandler[handlers.length];
+        for (int i = 0; i < handlers.length; i++) {
+            chunkHandlers[i] = chunkHandler(handlers[i]);
+        }
     }
 
     @Override
@@ -43,6 +52,13 @@ public class MultipleOverthereExecutionOutputHandler implements OverthereExecuti
         }
     }
 
+    @Override
+    public void handleChars(final char[] chars, final int offset, final int length) {
+        for (OverthereExecutionOutputChunkHandler h : chunkHandlers) {
+            h.handleChars(chars, offset, length);
+        }
+    }
+
     @Override
     public void handleChar(final char c) {
         for (OverthereExecutionOutputHandler h : handlers) {
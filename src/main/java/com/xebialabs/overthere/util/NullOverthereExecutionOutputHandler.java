@@ -22,13 +22,18 @@
  */
 package com.xebialabs.overthere.util;
 
-import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
 
-public class NullOverthereExecutionOutputHandler implements OverthereExecutionOutputHandler {
+public class NullOverthereExecutionOutputHandler implements OverthereExecutionOutputChunkHandler {
 
     private NullOverthereExecutionOutputHandler() {
     }
 
+    @Override
+    public void handleChars(final char[] chars, final int offset, final int length) {
+        // no-op
+    }
+
     @Override
     public void handleChar(final char c) {
         // no-op
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.util;
+
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
+import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+
+/**
+ * Adapts an {@link OverthereExecutionOutputHandler} that only handles single characters to the
+ * {@link OverthereExecutionOutputChunkHandler} interface by passing the characters of every chunk on one by one.
+ */
+public class OverthereExecutionOutputChunkAdapter implements OverthereExecutionOutputChunkHandler {
+
+    private final OverthereExecutionOutputHandler handler;
+
+    private OverthereExecutionOutputChunkAdapter(final OverthereExecutionOutputHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void handleChars(final char[] chars, final int offset, final int length) {
+        for (int i = offset; i < offset + length; i++) {
+            handler.handleChar(chars[i]);
+        }
+    }
+
+    @Override
+    public void handleChar(final char c) {
+        handler.handleChar(c);
+    }
+
+    @Override
+    public void handleLine(final String line) {
+        handler.handleLine(line);
+    }
+
+    /**
+     * Returns the handler as an {@link OverthereExecutionOutputChunkHandler}, adapting it if it does not implement that
+     * interface itself.
+     *
+     * @param handler the handler.
+     * @return the handler itself, or an adapter for it.
+     */
+    public static OverthereExecutionOutputChunkHandler chunkHandler(final OverthereExecutionOutputHandler handler) {
+        if (handler instanceof OverthereExecutionOutputChunkHandler) {
+            return (OverthereExecutionOutputChunkHandler) handler;
+        }
+        return new OverthereExecutionOutputChunkAdapter(handler);
+    }
+}
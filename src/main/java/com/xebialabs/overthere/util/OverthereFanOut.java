@@ -0,0 +1,355 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.ConnectionOptions;
+import com.xebialabs.overthere.Overthere;
+import com.xebialabs.overthere.OverthereConnection;
+import com.xebialabs.overthere.RuntimeIOException;
+
+import static com.xebialabs.overthere.ConnectionOptions.ADDRESS;
+import static com.xebialabs.overthere.util.CapturingOverthereExecutionOutputHandler.capturingHandler;
+import static com.xebialabs.overthere.util.OverthereUtils.checkArgument;
+import static com.xebialabs.overthere.util.OverthereUtils.checkNotNull;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static java.lang.String.format;
+
+/**
+ * Runs a task against a list of hosts in parallel. Every host gets its own connection, which is closed when the task
+ * has finished.
+ * <p/>
+ * The number of hosts that are handled at the same time is bounded. Every host has a timeout that starts when its
+ * connection is being established and covers the task as well. When a host times out, its connection is closed and
+ * the thread running the task is interrupted. The outcome for every host is returned as a {@link Result}, in the order
+ * of the targets.
+ */
+public class OverthereFanOut {
+
+    /**
+     * A task to run against a single host.
+     *
+     * @param <T> the type of the result of the task.
+     */
+    public interface HostTask<T> {
+        T run(OverthereConnection connection);
+    }
+
+    private final int parallelism;
+    private final long perHostTimeoutMillis;
+
+    /**
+     * Creates a fan-out.
+     *
+     * @param parallelism          the maximum number of hosts to handle at the same time.
+     * @param perHostTimeoutMillis the number of milliseconds a single host may take, including connecting. Use 0 for no timeout.
+     */
+    public OverthereFanOut(int parallelism, long perHostTimeoutMillis) {
+        checkArgument(parallelism > 0, "parallelism must be positive, not %s", parallelism);
+        checkArgument(perHostTimeoutMillis >= 0, "perHostTimeoutMillis must not be negative, not %s", perHostTimeoutMillis);
+        this.parallelism = parallelism;
+        this.perHostTimeoutMillis = perHostTimeoutMillis;
+    }
+
+    /**
+     * Runs a task against all targets and waits for the outcome for every target.
+     *
+     * @param targets the hosts to run the task against.
+     * @param task    the task to run.
+     * @return the outcomes, in the order of the targets.
+     */
+    public <T> List<Result<T>> run(List<Target> targets, final HostTask<T> task) {
+        checkNotNull(targets, "targets is null");
+        checkNotNull(task, "task is null");
+        if (targets.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final AtomicReferenceArray<Result<T>> results = new AtomicReferenceArray<Result<T>>(targets.size());
+        final CountDownLatch done = new CountDownLatch(targets.size());
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, targets.size()), new DaemonThreadFactory("fan-out worker"));
+        ScheduledExecutorService watchdog = perHostTimeoutMillis > 0 ? Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("fan-out watchdog")) : null;
+        try {
+            for (int i = 0; i < targets.size(); i++) {
+                workers.execute(new HostRun<T>(i, targets.get(i), task, results, done, watchdog));
+            }
+            done.await();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeIOException("Interrupted while waiting for hosts to finish", exc);
+        } finally {
+            workers.shutdownNow();
+            if (watchdog != null) {
+                watchdog.shutdownNow();
+            }
+        }
+
+        List<Result<T>> list = new ArrayList<Result<T>>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            list.add(results.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * Executes a command on all targets, capturing its output.
+     *
+     * @param targets     the hosts to execute the command on.
+     * @param commandLine the command to execute.
+     * @return the outcomes, in the order of the targets.
+     */
+    public List<Result<CommandOutput>> execute(List<Target> targets, CmdLine commandLine) {
+        return run(targets, executeTask(commandLine));
+    }
+
+    /**
+     * Creates a task that executes a command and captures its output.
+     *
+     * @param commandLine the command to execute.
+     * @return the task.
+     */
+    public static HostTask<CommandOutput> executeTask(final CmdLine commandLine) {
+        return new HostTask<CommandOutput>() {
+            @Override
+            public CommandOutput run(OverthereConnection connection) {
+                CapturingOverthereExecutionOutputHandler stdout = capturingHandler();
+                CapturingOverthereExecutionOutputHandler stderr = capturingHandler();
+                int exitCode = connection.execute(stdout, stderr, commandLine);
+                return new CommandOutput(exitCode, stdout.getOutput(), stderr.getOutput());
+            }
+        };
+    }
+
+    private class HostRun<T> implements Runnable {
+        private static final int RUNNING = 0;
+        private static final int FINISHED = 1;
+        private static final int TIMED_OUT = 2;
+
+        private final int index;
+        private final Target target;
+        private final HostTask<T> task;
+        private final AtomicReferenceArray<Result<T>> results;
+        private final CountDownLatch done;
+        private final ScheduledExecutorService watchdog;
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        private volatile OverthereConnection connection;
+        private Thread worker;
+        private long startedAt;
+
+        private HostRun(int index, Target target, HostTask<T> task, AtomicReferenceArray<Result<T>> results, CountDownLatch done, ScheduledExecutorService watchdog) {
+            this.index = index;
+            this.target = target;
+            this.task = task;
+            this.results = results;
+            this.done = done;
+            this.watchdog = watchdog;
+        }
+
+        @Override
+        public void run() {
+            worker = Thread.currentThread();
+            startedAt = System.currentTimeMillis();
+            ScheduledFuture<?> timeout = null;
+            if (watchdog != null) {
+                timeout = watchdog.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        timeOut();
+                    }
+                }, perHostTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+
+            try {
+                connection = Overthere.getConnection(target.getProtocol(), target.getOptions());
+                if (state.get() == TIMED_OUT) {
+                    return;
+                }
+                T value = task.run(connection);
+                complete(new Result<T>(target, value, null, elapsed()));
+            } catch (RuntimeException | Error exc) {
+                complete(new Result<T>(target, null, exc, elapsed()));
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                closeQuietly(connection);
+                synchronized (this) {
+                    if (state.get() == TIMED_OUT) {
+                        // clear the interrupt sent by the watchdog so that it does not leak into the next host
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        private synchronized void timeOut() {
+            if (!state.compareAndSet(RUNNING, TIMED_OUT)) {
+                return;
+            }
+            logger.warn("Host {} did not finish within {} ms, aborting it", target, perHostTimeoutMillis);
+            record(new Result<T>(target, null, new TimeoutException(format("Host %s did not finish within %d ms", target, perHostTimeoutMillis)), elapsed()));
+            closeQuietly(connection);
+            worker.interrupt();
+        }
+
+        private void complete(Result<T> result) {
+            if (state.compareAndSet(RUNNING, FINISHED)) {
+                record(result);
+            }
+        }
+
+        private void record(Result<T> result) {
+            results.set(index, result);
+            done.countDown();
+        }
+
+        private long elapsed() {
+            return System.currentTimeMillis() - startedAt;
+        }
+    }
+
+    /**
+     * A host to run a task against.
+     */
+    public static class Target {
+        private final String protocol;
+        private final ConnectionOptions options;
+
+        public Target(String protocol, ConnectionOptions options) {
+            this.protocol = checkNotNull(protocol, "protocol is null");
+            this.options = checkNotNull(options, "options is null");
+        }
+
+        public String getProtocol() {
+            return protocol;
+        }
+
+        public ConnectionOptions getOptions() {
+            return options;
+        }
+
+        @Override
+        public String toString() {
+            String address = options.getOptional(ADDRESS);
+            return address == null ? protocol : protocol + "://" + address;
+        }
+    }
+
+    /**
+     * The outcome of a task for a single host: either a value or the exception that made it fail.
+     *
+     * @param <T> the type of the result of the task.
+     */
+    public static class Result<T> {
+        private final Target target;
+        private final T value;
+        private final Throwable exception;
+        private final long durationMillis;
+
+        Result(Target target, T value, Throwable exception, long durationMillis) {
+            this.target = target;
+            this.value = value;
+            this.exception = exception;
+            this.durationMillis = durationMillis;
+        }
+
+        public Target getTarget() {
+            return target;
+        }
+
+        public boolean isSuccess() {
+            return exception == null;
+        }
+
+        public boolean isTimedOut() {
+            return exception instanceof TimeoutException;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public Throwable getException() {
+            return exception;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return target + (isSuccess() ? " succeeded: " + value : " failed: " + exception);
+        }
+    }
+
+    /**
+     * The exit code and the captured output of a command.
+     */
+    public static class CommandOutput {
+        private final int exitCode;
+        private final String stdout;
+        private final String stderr;
+
+        CommandOutput(int exitCode, String stdout, String stderr) {
+            this.exitCode = exitCode;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public String getStdout() {
+            return stdout;
+        }
+
+        public String getStderr() {
+            return stderr;
+        }
+
+        @Override
+        public String toString() {
+            return "exit code " + exitCode;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(OverthereFanOut.class);
+
+}
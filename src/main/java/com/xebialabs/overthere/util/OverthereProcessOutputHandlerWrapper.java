@@ -22,11 +22,12 @@
  */
 package com.xebialabs.overthere.util;
 
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
 import com.xebialabs.overthere.OverthereExecutionOutputHandler;
 import com.xebialabs.overthere.OverthereProcessOutputHandler;
 
 @SuppressWarnings("deprecation")
-public class OverthereProcessOutputHandlerWrapper implements OverthereExecutionOutputHandler {
+public class OverthereProcessOutputHandlerWrapper implements OverthereExecutionOutputChunkHandler {
 
     private OverthereProcessOutputHandler handler;
 
@@ -41,6 +42,15 @@ public class OverthereProcessOutputHandlerWrapper implements OverthereExecutionO
         this.stdout = stdout;
     }
 
+    @Override
+    public void handleChars(final char[] chars, final int offset, final int length) {
+        if (stdout) {
+            for (int i = offset; i < offset + length; i++) {
+                handler.handleOutput(chars[i]);
+            }
+        }
+    }
+
     @Override
     public void handleChar(final char c) {
         if (stdout) {
@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
+import com.xebialabs.overthere.RuntimeIOException;
+
+import static com.xebialabs.overthere.util.OverthereUtils.checkArgument;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+
+/**
+ * An implementation of the {@link com.xebialabs.overthere.OverthereExecutionOutputHandler} that captures the output
+ * with a bounded amount of memory. The output is kept in memory until it exceeds a threshold, after which it is written
+ * to a local temporary file as UTF-8. The captured output is read back as a stream with {@link #getOutputReader()}.
+ * <p/>
+ * Lines are separated by "\n", like in {@link CapturingOverthereExecutionOutputHandler#getOutput()}. The handler must
+ * be {@link #close() closed} to delete the temporary file.
+ */
+public class SpillingCapturingOverthereExecutionOutputHandler implements OverthereExecutionOutputChunkHandler, Closeable {
+
+    /**
+     * Default number of characters kept in memory before the output is written to a temporary file.
+     */
+    public static final int MEMORY_THRESHOLD_DEFAULT = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int memoryThreshold;
+    private StringBuilder memory = new StringBuilder();
+    private File spillFile;
+    private FileOutputStream spillStream;
+    private Writer spillWriter;
+    private long lineCount;
+    private boolean closed;
+
+    private SpillingCapturingOverthereExecutionOutputHandler(int memoryThreshold) {
+        checkArgument(memoryThreshold >= 0, "memoryThreshold must not be negative, not %s", memoryThreshold);
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    @Override
+    public void handleChars(final char[] chars, final int offset, final int length) {
+        // no-op
+    }
+
+    @Override
+    public void handleChar(final char c) {
+        // no-op
+    }
+
+    @Override
+    public synchronized void handleLine(final String line) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (spillWriter == null) {
+                if (lineCount > 0) {
+                    memory.append('\n');
+                }
+                memory.append(line);
+                if (memory.length() > memoryThreshold) {
+                    spill();
+                }
+            } else {
+                spillWriter.write('\n');
+                spillWriter.write(line);
+            }
+            lineCount++;
+        } catch (IOException exc) {
+            throw new RuntimeIOException("Cannot write captured output to " + spillFile, exc);
+        }
+    }
+
+    private void spill() throws IOException {
+        spillFile = File.createTempFile("overthere-output", ".txt");
+        spillFile.deleteOnExit();
+        spillStream = new FileOutputStream(spillFile);
+        spillWriter = new BufferedWriter(new OutputStreamWriter(spillStream, UTF_8));
+        spillWriter.append(memory);
+        memory = null;
+    }
+
+    /**
+     * Returns the number of captured lines.
+     *
+     * @return the number of lines.
+     */
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns whether the captured output has been written to a temporary file.
+     *
+     * @return <code>true</code> if the output exceeded the memory threshold.
+     */
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Returns a reader on the output captured so far, with the lines separated by "\n". Output that is captured after
+     * this method has been invoked is not returned by the reader.
+     *
+     * @return a reader on the captured output. The caller has to close it.
+     */
+    public synchronized Reader getOutputReader() {
+        if (closed) {
+            throw new IllegalStateException("Output handler has been closed");
+        }
+        if (spillWriter == null) {
+            return new StringReader(memory.toString());
+        }
+        try {
+            spillWriter.flush();
+            long length = spillStream.getChannel().position();
+            return new InputStreamReader(new BoundedInputStream(new FileInputStream(spillFile), length), UTF_8);
+        } catch (IOException exc) {
+            throw new RuntimeIOException("Cannot read captured output from " + spillFile, exc);
+        }
+    }
+
+    /**
+     * Discards the captured output and deletes the temporary file, if any.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        memory = null;
+        if (spillWriter != null) {
+            closeQuietly(spillWriter);
+            if (!spillFile.delete()) {
+                spillFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Creates a {@link SpillingCapturingOverthereExecutionOutputHandler} that keeps up to
+     * {@link #MEMORY_THRESHOLD_DEFAULT} characters in memory.
+     *
+     * @return the created {@link SpillingCapturingOverthereExecutionOutputHandler}.
+     */
+    public static SpillingCapturingOverthereExecutionOutputHandler spillingCapturingHandler() {
+        return new SpillingCapturingOverthereExecutionOutputHandler(MEMORY_THRESHOLD_DEFAULT);
+    }
+
+    /**
+     * Creates a {@link SpillingCapturingOverthereExecutionOutputHandler}.
+     *
+     * @param memoryThreshold the number of characters to keep in memory before writing the output to a temporary file.
+     * @return the created {@link SpillingCapturingOverthereExecutionOutputHandler}.
+     */
+    public static SpillingCapturingOverthereExecutionOutputHandler spillingCapturingHandler(int memoryThreshold) {
+        return new SpillingCapturingOverthereExecutionOutputHandler(memoryThreshold);
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.spi.BaseOverthereConnection;
+import com.xebialabs.overthere.util.OverthereUtils;
+
+import static com.xebialabs.overthere.ConnectionOptions.TEMPORARY_DIRECTORY_PATH;
+import static com.xebialabs.overthere.local.LocalConnection.LOCAL_PROTOCOL;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class OverthereConnectionPoolTest {
+
+    private OverthereConnectionPool pool;
+
+    @AfterMethod
+    public void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private OverthereConnectionPool pool(int maxConnectionsPerKey, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        pool = new OverthereConnectionPool(Overthere.getConnector(), maxConnectionsPerKey, idleTimeoutMillis, borrowTimeoutMillis);
+        return pool;
+    }
+
+    private static ConnectionOptions options(String tempDir) {
+        ConnectionOptions options = new ConnectionOptions();
+        options.set(TEMPORARY_DIRECTORY_PATH, tempDir);
+        return options;
+    }
+
+    private static BaseOverthereConnection delegateOf(OverthereConnection connection) {
+        return (BaseOverthereConnection) ((PooledOverthereConnection) connection).getDelegate();
+    }
+
+    @Test
+    public void shouldReuseReturnedConnection() {
+        pool(2, 0, 1000);
+        OverthereConnection first = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        BaseOverthereConnection delegate = delegateOf(first);
+        first.close();
+
+        assertThat(delegate.isConnected(), equalTo(true));
+        assertThat(pool.getIdleConnectionCount(), equalTo(1));
+
+        OverthereConnection second = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        assertThat(delegateOf(second), sameInstance(delegate));
+        second.close();
+    }
+
+    @Test
+    public void shouldNotShareConnectionsBetweenDifferentOptions() {
+        pool(2, 0, 1000);
+        OverthereConnection first = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        BaseOverthereConnection delegate = delegateOf(first);
+        first.close();
+
+        OverthereConnection second = pool.getConnection(LOCAL_PROTOCOL, options(System.getProperty("java.io.tmpdir") + "/other"));
+        assertThat(delegateOf(second), not(sameInstance(delegate)));
+        second.close();
+    }
+
+    @Test
+    public void shouldDiscardConnectionThatIsNoLongerConnected() {
+        pool(2, 0, 1000);
+        OverthereConnection first = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        BaseOverthereConnection delegate = delegateOf(first);
+        first.close();
+        delegate.close();
+
+        OverthereConnection second = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        assertThat(delegateOf(second), not(sameInstance(delegate)));
+        assertThat(delegateOf(second).isConnected(), equalTo(true));
+        second.close();
+    }
+
+    @Test
+    public void shouldNotReuseConnectionClosedThroughItsFiles() {
+        pool(1, 0, 10);
+        OverthereConnection first = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        BaseOverthereConnection delegate = delegateOf(first);
+        first.getFile("/tmp").getConnection().close();
+        first.close();
+
+        assertThat(pool.getIdleConnectionCount(), equalTo(0));
+        OverthereConnection second = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        assertThat(delegateOf(second), not(sameInstance(delegate)));
+        assertThat(second.getFile("/tmp").exists(), equalTo(true));
+        second.close();
+    }
+
+    @Test
+    public void shouldEvictIdleConnections() throws InterruptedException {
+        pool(2, 1, 1000);
+        OverthereConnection first = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        BaseOverthereConnection delegate = delegateOf(first);
+        first.close();
+        Thread.sleep(10);
+
+        pool.evictIdleConnections();
+        assertThat(pool.getIdleConnectionCount(), equalTo(0));
+        assertThat(delegate.isConnected(), equalTo(false));
+    }
+
+    @Test(expectedExceptions = RuntimeIOException.class)
+    public void shouldTimeOutWhenMaximumNumberOfConnectionsIsInUse() {
+        pool(1, 0, 10);
+        OverthereConnection first = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        try {
+            pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        } finally {
+            first.close();
+        }
+    }
+
+    @Test
+    public void shouldHandOutConnectionAgainAfterItHasBeenReturned() {
+        pool(1, 0, 10);
+        pool.getConnection(LOCAL_PROTOCOL, options("/tmp")).close();
+        pool.getConnection(LOCAL_PROTOCOL, options("/tmp")).close();
+        assertThat(pool.getIdleConnectionCount(), equalTo(1));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldNotAllowUseOfReturnedConnection() {
+        pool(1, 0, 10);
+        OverthereConnection connection = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        connection.close();
+        connection.getFile("/tmp");
+    }
+
+    @Test
+    public void shouldCloseIdleConnectionsWhenPoolIsClosed() {
+        pool(2, 0, 1000);
+        OverthereConnection first = pool.getConnection(LOCAL_PROTOCOL, options("/tmp"));
+        BaseOverthereConnection delegate = delegateOf(first);
+        first.close();
+
+        pool.close();
+        assertThat(delegate.isConnected(), equalTo(false));
+    }
+
+    @Test
+    public void shouldDeleteTemporaryFilesWhenConnectionIsReturned() {
+        pool(1, 0, 1000);
+        OverthereConnection first = pool.getConnection(LOCAL_PROTOCOL, options(System.getProperty("java.io.tmpdir")));
+        OverthereFile tempFile = first.getTempFile("pooled.txt");
+        OverthereUtils.write("contents".getBytes(), tempFile);
+        OverthereFile holder = tempFile.getParentFile();
+        first.close();
+
+        assertThat(holder.exists(), equalTo(false));
+
+        OverthereConnection second = pool.getConnection(LOCAL_PROTOCOL, options(System.getProperty("java.io.tmpdir")));
+        assertThat(second.getTempFile("pooled.txt").getParentFile().exists(), equalTo(true));
+        second.close();
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.spi.OverthereConnectionBuilder;
+import com.xebialabs.overthere.spi.Protocol;
+
+import nl.javadude.scannit.Configuration;
+import nl.javadude.scannit.Scannit;
+import nl.javadude.scannit.scanner.TypeAnnotationScanner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+
+public class ProtocolIndexTest {
+
+    @Test
+    public void shouldListSameProtocolsAsClasspathScanning() {
+        Scannit scannit = new Scannit(Configuration.config().scan("com.xebialabs.overthere").with(new TypeAnnotationScanner()));
+        Set<Class<?>> scanned = scannit.getTypesAnnotatedWith(Protocol.class);
+
+        List<Class<?>> indexed = ProtocolIndex.load(getClass().getClassLoader());
+
+        assertThat(new HashSet<Class<?>>(indexed), equalTo(scanned));
+    }
+
+    @Test
+    public void shouldOnlyListAnnotatedConnectionBuilders() {
+        for (Class<?> each : ProtocolIndex.load(getClass().getClassLoader())) {
+            assertThat(each.getName(), OverthereConnectionBuilder.class.isAssignableFrom(each), equalTo(true));
+            assertThat(each.getName(), each.isAnnotationPresent(Protocol.class), equalTo(true));
+        }
+    }
+
+    @Test
+    public void shouldRegisterIndexedProtocols() {
+        Set<String> protocols = Overthere.getConnector().protocols.get().keySet();
+        for (Class<?> each : ProtocolIndex.load(getClass().getClassLoader())) {
+            assertThat(protocols, hasItem(each.getAnnotation(Protocol.class).name()));
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.spi.AddressPortMapper;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SharedAddressPortMapperRegistryTest {
+
+    private SharedAddressPortMapperRegistry registry;
+    private CountingFactory factory;
+
+    @BeforeMethod
+    public void init() {
+        registry = new SharedAddressPortMapperRegistry();
+        factory = new CountingFactory();
+    }
+
+    private static ConnectionOptions options(String address) {
+        ConnectionOptions options = new ConnectionOptions();
+        options.set(ConnectionOptions.ADDRESS, address);
+        return options;
+    }
+
+    @Test
+    public void shouldShareMapperBetweenEqualOptions() {
+        AddressPortMapper first = registry.acquire("ssh-jumpstation", options("bastion"), factory);
+        AddressPortMapper second = registry.acquire("ssh-jumpstation", options("bastion"), factory);
+
+        assertThat(factory.created, equalTo(1));
+        assertThat(registry.size(), equalTo(1));
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void shouldNotShareMapperBetweenDifferentOptions() {
+        AddressPortMapper first = registry.acquire("ssh-jumpstation", options("bastion1"), factory);
+        AddressPortMapper second = registry.acquire("ssh-jumpstation", options("bastion2"), factory);
+
+        assertThat(factory.created, equalTo(2));
+        assertThat(registry.size(), equalTo(2));
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void shouldCloseMapperWhenLastLeaseIsClosed() {
+        AddressPortMapper first = registry.acquire("ssh-jumpstation", options("bastion"), factory);
+        AddressPortMapper second = registry.acquire("ssh-jumpstation", options("bastion"), factory);
+
+        first.close();
+        first.close();
+        verify(factory.last, never()).close();
+
+        second.close();
+        verify(factory.last, times(1)).close();
+        assertThat(registry.size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldCreateNewMapperAfterAllLeasesHaveBeenClosed() {
+        registry.acquire("ssh-jumpstation", options("bastion"), factory).close();
+        registry.acquire("ssh-jumpstation", options("bastion"), factory).close();
+
+        assertThat(factory.created, equalTo(2));
+    }
+
+    @Test
+    public void shouldReleaseReferenceWhenCreationFails() {
+        try {
+            registry.acquire("ssh-jumpstation", options("bastion"), new SharedAddressPortMapperRegistry.MapperFactory() {
+                @Override
+                public AddressPortMapper create(String protocol, ConnectionOptions options) {
+                    throw new RuntimeIOException("Cannot connect");
+                }
+            });
+        } catch (RuntimeIOException expected) {
+            // expected
+        }
+        assertThat(registry.size(), equalTo(0));
+    }
+
+    private static class CountingFactory implements SharedAddressPortMapperRegistry.MapperFactory {
+        private int created;
+        private AddressPortMapper last;
+
+        @Override
+        public AddressPortMapper create(String protocol, ConnectionOptions options) {
+            created++;
+            last = mock(AddressPortMapper.class);
+            return last;
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.spi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
+import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+
+/**
+ * Measures the throughput of reading command output: the original loop that reads one character at a time from an
+ * {@link InputStreamReader} against the block decoding {@link OutputPump}, with a handler that handles single characters
+ * and with one that handles {@link OverthereExecutionOutputChunkHandler chunks}.
+ * <p/>
+ * Run with <code>gradle jmh -PjmhArgs=OutputPumpBenchmark</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutputPumpBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"80", "1000"})
+    public int lineLength;
+
+    private byte[] output;
+
+    @Setup
+    public void createOutput() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < lineLength; i++) {
+            line.append((char) ('a' + i % 26));
+        }
+        line.append('\n');
+
+        StringBuilder b = new StringBuilder();
+        while (b.length() < 4 * 1024 * 1024) {
+            b.append(line);
+        }
+        output = b.toString().getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public void characterAtATime(Blackhole blackhole) throws IOException {
+        OverthereExecutionOutputHandler handler = new BlackholeHandler(blackhole);
+        StringBuilder lineBuffer = new StringBuilder();
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(output), UTF_8);
+        int cInt = reader.read();
+        while (cInt > -1) {
+            char c = (char) cInt;
+            handler.handleChar(c);
+            if (c != '\r' && c != '\n') {
+                lineBuffer.append(c);
+            }
+            if (c == '\n') {
+                handler.handleLine(lineBuffer.toString());
+                lineBuffer.setLength(0);
+            }
+            cInt = reader.read();
+        }
+        if (lineBuffer.length() > 0) {
+            handler.handleLine(lineBuffer.toString());
+        }
+    }
+
+    @Benchmark
+    public void blockDecoding(Blackhole blackhole) {
+        new OutputPump("stdout", "benchmark", new BlackholeHandler(blackhole), new ByteArrayInputStream(output), UTF_8, new CountDownLatch(1), null).run();
+    }
+
+    @Benchmark
+    public void blockDecodingWithChunkHandler(Blackhole blackhole) {
+        new OutputPump("stdout", "benchmark", new BlackholeChunkHandler(blackhole), new ByteArrayInputStream(output), UTF_8, new CountDownLatch(1), null).run();
+    }
+
+    private static class BlackholeChunkHandler extends BlackholeHandler implements OverthereExecutionOutputChunkHandler {
+        private BlackholeChunkHandler(Blackhole blackhole) {
+            super(blackhole);
+        }
+
+        @Override
+        public void handleChars(char[] chars, int offset, int length) {
+            blackhole.consume(length);
+        }
+    }
+
+    private static class BlackholeHandler implements OverthereExecutionOutputHandler {
+        protected final Blackhole blackhole;
+
+        private BlackholeHandler(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void handleChar(char c) {
+            blackhole.consume(c);
+        }
+
+        @Override
+        public void handleLine(String line) {
+            blackhole.consume(line);
+        }
+    }
+
+}
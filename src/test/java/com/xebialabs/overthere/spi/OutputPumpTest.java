@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.spi;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.ConnectionOptions;
+import com.xebialabs.overthere.Overthere;
+import com.xebialabs.overthere.OverthereExecutionOutputChunkHandler;
+import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+import com.xebialabs.overthere.util.CapturingOverthereExecutionOutputHandler;
+
+import static com.xebialabs.overthere.local.LocalConnection.LOCAL_PROTOCOL;
+import static com.xebialabs.overthere.util.CapturingOverthereExecutionOutputHandler.capturingHandler;
+import static com.xebialabs.overthere.util.MultipleOverthereExecutionOutputHandler.multiHandler;
+import static com.xebialabs.overthere.util.NullOverthereExecutionOutputHandler.swallow;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class OutputPumpTest {
+
+    private BaseOverthereConnection connection;
+
+    @BeforeMethod
+    public void connect() {
+        connection = (BaseOverthereConnection) Overthere.getConnection(LOCAL_PROTOCOL, new ConnectionOptions());
+    }
+
+    @AfterMethod
+    public void disconnect() {
+        connection.close();
+    }
+
+    @Test
+    public void shouldRunPumpsOnConfiguredExecutor() {
+        final AtomicInteger submitted = new AtomicInteger();
+        connection.setOutputPumpExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.incrementAndGet();
+                Thread t = new Thread(command);
+                t.setDaemon(true);
+                t.start();
+            }
+        });
+
+        CapturingOverthereExecutionOutputHandler stdout = capturingHandler();
+        int exitCode = connection.execute(stdout, swallow(), CmdLine.build("echo", "hello"));
+
+        assertThat(exitCode, equalTo(0));
+        assertThat(stdout.getOutput(), equalTo("hello"));
+        assertThat(submitted.get(), equalTo(2));
+    }
+
+    @Test
+    public void shouldRunPumpsOnNamedDaemonThreadsOfSharedPool() {
+        final List<String> threadNames = Collections.synchronizedList(new ArrayList<String>());
+        for (int i = 0; i < 3; i++) {
+            connection.execute(new OverthereExecutionOutputHandler() {
+                @Override
+                public void handleChar(char c) {
+                }
+
+                @Override
+                public void handleLine(String line) {
+                    assertThat(Thread.currentThread().isDaemon(), equalTo(true));
+                    threadNames.add(Thread.currentThread().getName());
+                }
+            }, swallow(), CmdLine.build("echo", "hello"));
+        }
+
+        assertThat(threadNames.size(), equalTo(3));
+        assertThat(threadNames, everyItem(equalTo("stdout reader")));
+    }
+
+    @Test
+    public void shouldSplitLinesAndDecodeAcrossBufferBoundaries() throws UnsupportedEncodingException {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < OutputPump.BUFFER_SIZE; i++) {
+            longLine.append('\u00e9');
+        }
+        String output = "first\r\n" + longLine + "\n\nlast";
+
+        RecordingHandler handler = new RecordingHandler();
+        pump(output.getBytes("UTF-8"), Charset.forName("UTF-8"), handler);
+
+        assertThat(handler.lines, equalTo(Arrays.asList("first", longLine.toString(), "", "last")));
+        assertThat(handler.chars.toString(), equalTo(output));
+    }
+
+    @Test
+    public void shouldInvokeHandleCharBeforeHandleLine() throws UnsupportedEncodingException {
+        RecordingHandler handler = new RecordingHandler();
+        pump("ab\ncd\n".getBytes("UTF-8"), Charset.forName("UTF-8"), handler);
+
+        assertThat(handler.events, equalTo(Arrays.asList("a", "b", "\n", "[ab]", "c", "d", "\n", "[cd]")));
+    }
+
+    @Test
+    public void shouldDecodeWithGivenCharset() throws UnsupportedEncodingException {
+        RecordingHandler handler = new RecordingHandler();
+        pump("caf\u00e9\n".getBytes("ISO-8859-1"), Charset.forName("ISO-8859-1"), handler);
+
+        assertThat(handler.lines, equalTo(Arrays.asList("caf\u00e9")));
+    }
+
+    @Test
+    public void shouldPassLinesAsChunksToChunkHandlers() throws UnsupportedEncodingException {
+        final List<String> chunks = new ArrayList<String>();
+        RecordingHandler charHandler = new RecordingHandler();
+        OverthereExecutionOutputChunkHandler chunkHandler = new OverthereExecutionOutputChunkHandler() {
+            @Override
+            public void handleChars(char[] chars, int offset, int length) {
+                chunks.add(new String(chars, offset, length));
+            }
+
+            @Override
+            public void handleChar(char c) {
+                chunks.add("unexpected handleChar");
+            }
+
+            @Override
+            public void handleLine(String line) {
+            }
+        };
+
+        pump("ab\ncd".getBytes("UTF-8"), Charset.forName("UTF-8"), multiHandler(chunkHandler, charHandler));
+
+        assertThat(chunks, equalTo(Arrays.asList("ab\n", "cd")));
+        assertThat(charHandler.events, equalTo(Arrays.asList("a", "b", "\n", "[ab]", "c", "d", "[cd]")));
+    }
+
+    private static void pump(byte[] bytes, Charset charset, OverthereExecutionOutputHandler handler) {
+        new OutputPump("stdout", "test", handler, new ByteArrayInputStream(bytes), charset, new CountDownLatch(1), null).run();
+    }
+
+    private static class RecordingHandler implements OverthereExecutionOutputHandler {
+        private final StringBuilder chars = new StringBuilder();
+        private final List<String> lines = new ArrayList<String>();
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void handleChar(char c) {
+            chars.append(c);
+            events.add(String.valueOf(c));
+        }
+
+        @Override
+        public void handleLine(String line) {
+            lines.add(line);
+            events.add("[" + line + "]");
+        }
+    }
+
+    @Test
+    public void shouldAlwaysProvideVirtualThreadExecutor() {
+        assertThat(OutputPumpExecutors.virtualThreads(), notNullValue());
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+
+/**
+ * A TCP server on a free port that echoes everything it receives on a connection until the client closes it, for tests
+ * that forward connections through an {@link EmbeddedSftpServer}.
+ */
+class EchoServer extends Thread implements Closeable {
+
+    private final ServerSocket serverSocket;
+
+    EchoServer() throws IOException {
+        super("echo server");
+        setDaemon(true);
+        serverSocket = new ServerSocket(0);
+        start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (;;) {
+                final Socket socket = serverSocket.accept();
+                Thread echo = new Thread("echo") {
+                    @Override
+                    public void run() {
+                        try {
+                            InputStream in = socket.getInputStream();
+                            OutputStream out = socket.getOutputStream();
+                            byte[] buffer = new byte[8192];
+                            int n;
+                            while ((n = in.read(buffer)) > 0) {
+                                out.write(buffer, 0, n);
+                            }
+                        } catch (IOException ignore) {
+                            // Connection reset by the test.
+                        } finally {
+                            closeQuietly(socket);
+                        }
+                    }
+                };
+                echo.setDaemon(true);
+                echo.start();
+            }
+        } catch (IOException ignore) {
+            // Closed.
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.forward.AcceptAllForwardingFilter;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+
+import com.xebialabs.overthere.ConnectionOptions;
+
+import static com.xebialabs.overthere.ConnectionOptions.ADDRESS;
+import static com.xebialabs.overthere.ConnectionOptions.OPERATING_SYSTEM;
+import static com.xebialabs.overthere.ConnectionOptions.PASSWORD;
+import static com.xebialabs.overthere.ConnectionOptions.PORT;
+import static com.xebialabs.overthere.ConnectionOptions.USERNAME;
+import static com.xebialabs.overthere.OperatingSystemFamily.UNIX;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.CONNECTION_TYPE;
+import static com.xebialabs.overthere.ssh.SshConnectionType.SFTP;
+
+/**
+ * An SSH server on the loopback interface that serves a temporary directory over SFTP to any user with any password, for
+ * benchmarks and tests that need a real SSH connection. It accepts all compression algorithms and local port forwards.
+ */
+class EmbeddedSftpServer implements Closeable {
+
+    private final File root;
+
+    private final SshServer server;
+
+    EmbeddedSftpServer() throws IOException {
+        root = File.createTempFile("sftp-server", "");
+        if (!root.delete() || !root.mkdir()) {
+            throw new IOException("Cannot create directory " + root);
+        }
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(new File(root, "hostkey.ser").toPath()));
+        server.setPasswordAuthenticator(new PasswordAuthenticator() {
+            @Override
+            public boolean authenticate(String username, String password, ServerSession session) {
+                return true;
+            }
+        });
+        server.setCompressionFactories(Arrays.<NamedFactory<Compression>>asList(BuiltinCompressions.none, BuiltinCompressions.zlib, BuiltinCompressions.delayedZlib));
+        server.setSubsystemFactories(Collections.<NamedFactory<Command>>singletonList(new SftpSubsystemFactory()));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(root.toPath()));
+        server.setForwardingFilter(AcceptAllForwardingFilter.INSTANCE);
+        server.start();
+    }
+
+    int getPort() {
+        return server.getPort();
+    }
+
+    /**
+     * @return the options for an SFTP connection to this server on the given port, which may be that of a proxy in front
+     *         of it.
+     */
+    ConnectionOptions getConnectionOptions(int port) {
+        ConnectionOptions options = new ConnectionOptions();
+        options.set(CONNECTION_TYPE, SFTP);
+        options.set(OPERATING_SYSTEM, UNIX);
+        options.set(ADDRESS, "127.0.0.1");
+        options.set(PORT, port);
+        options.set(USERNAME, "benchmark");
+        options.set(PASSWORD, "benchmark");
+        return options;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(true);
+        for (File f : root.listFiles()) {
+            f.delete();
+        }
+        root.delete();
+    }
+
+}
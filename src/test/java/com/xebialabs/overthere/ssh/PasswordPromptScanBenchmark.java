@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PASSWORD_PROMPT_REGEX_DEFAULT;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PASSWORD_PROMPT_SCAN_LIMIT_DEFAULT;
+
+/**
+ * Measures the throughput of reading the output of an elevated command that starts with a password prompt and continues
+ * with log lines full of colons, the last character of the default prompt regex: through the original password
+ * handling stream, through {@link SshElevatedPasswordHandlingStream} scanning all output and scanning only the default
+ * number of bytes, and without password handling.
+ * <p/>
+ * Run with <code>gradle jmh -PjmhArgs=PasswordPromptScanBenchmark</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PasswordPromptScanBenchmark {
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private byte[] output;
+
+    @Setup
+    public void createOutput() {
+        StringBuilder b = new StringBuilder("[sudo] password for deployer:\r\n");
+        for (int i = 0; b.length() < 4 * 1024 * 1024; i++) {
+            b.append("2026-10-17 12:").append(i % 60).append(":").append(i % 60).append(" INFO deployment: copied file ").append(i).append(": done\r\n");
+        }
+        output = b.toString().getBytes();
+    }
+
+    @Benchmark
+    public long original() throws IOException {
+        return drain(new OriginalPasswordHandlingStream(new ByteArrayInputStream(output), DISCARD, "secret", SUDO_PASSWORD_PROMPT_REGEX_DEFAULT));
+    }
+
+    @Benchmark
+    public long scanAll() throws IOException {
+        return drain(new SshElevatedPasswordHandlingStream(new ByteArrayInputStream(output), DISCARD, "secret", SUDO_PASSWORD_PROMPT_REGEX_DEFAULT, 0));
+    }
+
+    @Benchmark
+    public long scanLimited() throws IOException {
+        return drain(new SshElevatedPasswordHandlingStream(new ByteArrayInputStream(output), DISCARD, "secret", SUDO_PASSWORD_PROMPT_REGEX_DEFAULT, SUDO_PASSWORD_PROMPT_SCAN_LIMIT_DEFAULT));
+    }
+
+    @Benchmark
+    public long noPasswordHandling() throws IOException {
+        return drain(new ByteArrayInputStream(output));
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        for (int n; (n = in.read(buffer, 0, buffer.length)) != -1; ) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * The password handling stream as it was before the output was scanned through a bounded window.
+     */
+    private static class OriginalPasswordHandlingStream extends FilterInputStream {
+        private final OutputStream remoteStdin;
+        private final byte[] passwordBytes;
+        private final String passwordRegex;
+        private final Pattern passwordPattern;
+        private final StringBuilder receivedOutputBuffer = new StringBuilder();
+
+        private OriginalPasswordHandlingStream(InputStream remoteStdout, OutputStream remoteStdin, String password, String passwordPromptRegex) {
+            super(remoteStdout);
+            this.remoteStdin = remoteStdin;
+            this.passwordBytes = (password + "\r\n").getBytes();
+            this.passwordRegex = passwordPromptRegex;
+            this.passwordPattern = Pattern.compile(passwordRegex);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int numBytesRead = super.read(b, off, len);
+            if (numBytesRead > -1) {
+                for (int i = 0; i < numBytesRead; i++) {
+                    handleChar((char) b[off + i]);
+                }
+            }
+            return numBytesRead;
+        }
+
+        private void handleChar(char c) throws IOException {
+            logger.trace("Received: {}", c);
+            if (c == '\n') {
+                receivedOutputBuffer.setLength(0);
+            } else {
+                receivedOutputBuffer.append(c);
+                if (c == passwordRegex.charAt(passwordRegex.length() - 1)) {
+                    String receivedOutput = receivedOutputBuffer.toString();
+                    if (passwordPattern.matcher(receivedOutput).matches()) {
+                        remoteStdin.write(passwordBytes);
+                        remoteStdin.flush();
+                    }
+                }
+            }
+        }
+
+        private static final Logger logger = LoggerFactory.getLogger(OriginalPasswordHandlingStream.class);
+    }
+
+}
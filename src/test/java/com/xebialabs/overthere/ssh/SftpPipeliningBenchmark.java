@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xebialabs.overthere.ConnectionOptions;
+import com.xebialabs.overthere.Overthere;
+import com.xebialabs.overthere.OverthereConnection;
+import com.xebialabs.overthere.OverthereFile;
+
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SFTP_MAX_OUTSTANDING_REQUESTS;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+
+/**
+ * Measures the throughput of reading and writing a file over SFTP with and without pipelined requests. The SFTP server is
+ * an embedded SSH server on the loopback interface, reached through a proxy that delays all traffic to simulate the round
+ * trip time of a real network.
+ * <p/>
+ * Run with <code>gradle jmh -PjmhArgs=SftpPipeliningBenchmark</code>.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SftpPipeliningBenchmark {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+
+    @Param({"0", "20"})
+    public int latencyMillis;
+
+    @Param({"1", "16"})
+    public int maxOutstandingRequests;
+
+    private EmbeddedSftpServer server;
+
+    private SimulatedLinkProxy proxy;
+
+    private OverthereConnection connection;
+
+    private byte[] contents;
+
+    @Setup
+    public void start() throws IOException {
+        server = new EmbeddedSftpServer();
+        proxy = new SimulatedLinkProxy(server.getPort(), latencyMillis, 0);
+
+        ConnectionOptions options = server.getConnectionOptions(proxy.getPort());
+        options.set(SFTP_MAX_OUTSTANDING_REQUESTS, maxOutstandingRequests);
+        connection = Overthere.getConnection("ssh", options);
+
+        contents = new byte[FILE_SIZE];
+        new Random(42).nextBytes(contents);
+        write();
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        closeQuietly(connection);
+        closeQuietly(proxy);
+        closeQuietly(server);
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        OverthereFile file = connection.getFile("/bench.bin");
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        InputStream in = file.getInputStream();
+        try {
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                total += n;
+            }
+        } finally {
+            in.close();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        OverthereFile file = connection.getFile("/bench.bin");
+        OutputStream out = file.getOutputStream();
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+
+/**
+ * A TCP proxy on the loopback interface that simulates a network link: every chunk it receives is forwarded after half
+ * of the round trip time has passed, and no faster than the bandwidth of the link allows.
+ */
+class SimulatedLinkProxy implements Closeable {
+    private static final byte[] EOF = new byte[0];
+
+    private final ServerSocket serverSocket;
+    private final int targetPort;
+    private final long delayNanos;
+    private final long bytesPerSecond;
+
+    /**
+     * @param targetPort     the port on the loopback interface to forward to.
+     * @param latencyMillis  the round trip time of the link.
+     * @param bytesPerSecond the bandwidth of the link in each direction, or 0 for an unlimited bandwidth.
+     */
+    SimulatedLinkProxy(int targetPort, int latencyMillis, long bytesPerSecond) throws IOException {
+        this.targetPort = targetPort;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis) / 2;
+        this.bytesPerSecond = bytesPerSecond;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        daemon(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "simulated link acceptor");
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptConnections() {
+        try {
+            for (; ; ) {
+                Socket client = serverSocket.accept();
+                Socket target = new Socket("127.0.0.1", targetPort);
+                client.setTcpNoDelay(true);
+                target.setTcpNoDelay(true);
+                forward(client, target);
+                forward(target, client);
+            }
+        } catch (IOException ignored) {
+            // The proxy has been closed
+        }
+    }
+
+    private void forward(final Socket from, final Socket to) {
+        final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<Chunk>();
+        daemon(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    InputStream in = from.getInputStream();
+                    byte[] buffer = new byte[32 * 1024];
+                    for (int n; (n = in.read(buffer)) != -1; ) {
+                        queue.add(new Chunk(Arrays.copyOf(buffer, n), System.nanoTime() + delayNanos));
+                    }
+                } catch (IOException ignored) {
+                    // The connection has been closed
+                }
+                queue.add(new Chunk(EOF, System.nanoTime() + delayNanos));
+            }
+        }, "simulated link reader");
+        daemon(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = to.getOutputStream();
+                    long linkFreeAt = 0;
+                    for (; ; ) {
+                        Chunk chunk = queue.take();
+                        long due = chunk.due;
+                        if (bytesPerSecond > 0) {
+                            // the chunk arrives once the link has carried it and everything sent before it
+                            linkFreeAt = Math.max(linkFreeAt, chunk.due - delayNanos) + chunk.data.length * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+                            due = Math.max(due, linkFreeAt + delayNanos);
+                        }
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        if (chunk.data == EOF) {
+                            break;
+                        }
+                        out.write(chunk.data);
+                        out.flush();
+                    }
+                } catch (IOException | InterruptedException ignored) {
+                    // The connection has been closed
+                }
+                closeQuietly(from);
+                closeQuietly(to);
+            }
+        }, "simulated link writer");
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private static void daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static class Chunk {
+        private final byte[] data;
+        private final long due;
+
+        private Chunk(byte[] data, long due) {
+            this.data = data;
+            this.due = due;
+        }
+    }
+}
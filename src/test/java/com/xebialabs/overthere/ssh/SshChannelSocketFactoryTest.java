@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.ConnectionOptions;
+import com.xebialabs.overthere.OverthereConnection;
+import com.xebialabs.overthere.OverthereFile;
+import com.xebialabs.overthere.util.DefaultAddressPortMapper;
+import com.xebialabs.overthere.util.OverthereUtils;
+
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.CHANNEL_SOCKETS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SSH_PROTOCOL;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static java.net.InetSocketAddress.createUnresolved;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.testng.Assert.fail;
+
+public class SshChannelSocketFactoryTest {
+
+    private EmbeddedSftpServer server;
+
+    private EchoServer echoServer;
+
+    private SshTunnelConnection tunnel;
+
+    @BeforeClass
+    public void startServers() throws IOException {
+        server = new EmbeddedSftpServer();
+        echoServer = new EchoServer();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServers() {
+        closeQuietly(echoServer);
+        closeQuietly(server);
+    }
+
+    @BeforeMethod
+    public void openTunnel() {
+        ConnectionOptions options = server.getConnectionOptions(server.getPort());
+        options.set(CHANNEL_SOCKETS, true);
+        tunnel = new SshTunnelConnection(SshJumpstationConnectionBuilder.SSH_JUMPSTATION_PROTOCOL, options, DefaultAddressPortMapper.INSTANCE);
+        tunnel.connect();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void closeTunnel() {
+        tunnel.close();
+    }
+
+    @Test
+    public void shouldNotMapAddressesAndHandOutChannelSockets() {
+        InetSocketAddress address = createUnresolved("target.example.com", 5985);
+
+        assertThat(tunnel.map(address), sameInstance(address));
+        assertThat(tunnel.socketFactory(), instanceOf(SshChannelSocketFactory.class));
+    }
+
+    @Test
+    public void shouldExchangeDataOverChannel() throws IOException {
+        Socket socket = tunnel.socketFactory().createSocket("127.0.0.1", echoServer.getPort());
+        try {
+            assertThat(socket.isConnected(), equalTo(true));
+            assertThat(socket.getPort(), equalTo(echoServer.getPort()));
+            assertThat(echo(socket, "hello"), equalTo("hello"));
+            assertThat(echo(socket, "world"), equalTo("world"));
+        } finally {
+            socket.close();
+        }
+        assertThat(socket.isClosed(), equalTo(true));
+    }
+
+    @Test
+    public void shouldLetJumpstationResolveUnresolvedAddresses() throws IOException {
+        Socket socket = tunnel.socketFactory().createSocket();
+        try {
+            socket.connect(createUnresolved("localhost", echoServer.getPort()), 5000);
+            assertThat(echo(socket, "resolved remotely"), equalTo("resolved remotely"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void shouldTimeOutReadsAndRemainUsable() throws IOException {
+        Socket socket = tunnel.socketFactory().createSocket("127.0.0.1", echoServer.getPort());
+        try {
+            socket.setSoTimeout(200);
+            try {
+                socket.getInputStream().read();
+                fail("Expected read to time out");
+            } catch (SocketTimeoutException expected) {
+                // OK.
+            }
+            socket.setSoTimeout(10000);
+            assertThat(echo(socket, "after timeout"), equalTo("after timeout"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void shouldSeeEndOfStreamWhenTargetClosesConnection() throws IOException {
+        ServerSocket closingServer = new ServerSocket(0);
+        try {
+            Socket socket = tunnel.socketFactory().createSocket("127.0.0.1", closingServer.getLocalPort());
+            try {
+                closingServer.accept().close();
+                socket.setSoTimeout(10000);
+                assertThat(socket.getInputStream().read(), equalTo(-1));
+            } finally {
+                socket.close();
+            }
+        } finally {
+            closingServer.close();
+        }
+    }
+
+    @Test
+    public void shouldThrowConnectExceptionWhenTargetIsUnreachable() throws IOException {
+        ServerSocket unused = new ServerSocket(0);
+        int closedPort = unused.getLocalPort();
+        unused.close();
+
+        try {
+            tunnel.socketFactory().createSocket("127.0.0.1", closedPort);
+            fail("Expected ConnectException");
+        } catch (ConnectException expected) {
+            // OK.
+        }
+    }
+
+    @Test
+    public void shouldConnectNestedSshConnectionThroughChannel() {
+        ConnectionOptions options = server.getConnectionOptions(server.getPort());
+        OverthereConnection connection = new SshConnectionBuilder(SSH_PROTOCOL, options, tunnel).connect();
+        try {
+            OverthereFile file = connection.getFile("/nested.txt");
+            OverthereUtils.write("through the tunnel".getBytes(), file);
+            assertThat(new String(OverthereUtils.read(file)), equalTo("through the tunnel"));
+            file.delete();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static String echo(Socket socket, String message) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(message.getBytes("UTF-8"));
+        byte[] received = new byte[message.length()];
+        InputStream in = socket.getInputStream();
+        int total = 0;
+        int n;
+        while (total < received.length && (n = in.read(received, total, received.length - total)) > 0) {
+            total += n;
+        }
+        return new String(received, 0, total, "UTF-8");
+    }
+
+}
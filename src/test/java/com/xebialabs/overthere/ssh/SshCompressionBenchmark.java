@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xebialabs.overthere.ConnectionOptions;
+import com.xebialabs.overthere.Overthere;
+import com.xebialabs.overthere.OverthereConnection;
+import com.xebialabs.overthere.OverthereFile;
+
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.COMPRESSION;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+
+/**
+ * Measures the time and CPU it takes to read and write a file over SFTP with and without compression, for text that
+ * compresses well and for random data that does not. The SFTP server is an embedded SSH server on the loopback
+ * interface, reached through a proxy that limits the bandwidth to simulate a slow network. The CPU time is reported as
+ * the secondary <code>cpuMillisPerOp</code> result and includes the CPU used by the embedded server.
+ * <p/>
+ * Run with <code>gradle jmh -PjmhArgs=SshCompressionBenchmark</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SshCompressionBenchmark {
+
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    @Param({"NONE", "ZLIB", "DELAYED_ZLIB"})
+    public SshCompression compression;
+
+    @Param({"text", "binary"})
+    public String payload;
+
+    /**
+     * The bandwidth of the simulated link in KiB per second, or 0 for the unlimited bandwidth of the loopback interface.
+     */
+    @Param({"0", "2048"})
+    public int bandwidthKiBps;
+
+    private EmbeddedSftpServer server;
+
+    private SimulatedLinkProxy proxy;
+
+    private OverthereConnection connection;
+
+    private byte[] contents;
+
+    @Setup
+    public void start() throws IOException {
+        server = new EmbeddedSftpServer();
+        proxy = new SimulatedLinkProxy(server.getPort(), 0, bandwidthKiBps * 1024L);
+
+        ConnectionOptions options = server.getConnectionOptions(proxy.getPort());
+        options.set(COMPRESSION, compression);
+        connection = Overthere.getConnection("ssh", options);
+
+        contents = payload.equals("text") ? text() : binary();
+        write(new CpuTime());
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        closeQuietly(connection);
+        closeQuietly(proxy);
+        closeQuietly(server);
+    }
+
+    @Benchmark
+    public long read(CpuTime cpu) throws IOException {
+        OverthereFile file = connection.getFile("/bench.dat");
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        InputStream in = file.getInputStream();
+        try {
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                total += n;
+            }
+        } finally {
+            in.close();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public void write(CpuTime cpu) throws IOException {
+        OverthereFile file = connection.getFile("/bench.dat");
+        OutputStream out = file.getOutputStream();
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] text() {
+        String[] words = {"overthere", "connection", "remote", "file", "command", "host", "ssh", "transfer", "log", "INFO", "DEBUG", "2026-10-17"};
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(FILE_SIZE);
+        while (sb.length() < FILE_SIZE) {
+            sb.append(words[random.nextInt(words.length)]).append(random.nextInt(16) == 0 ? '\n' : ' ');
+        }
+        return sb.substring(0, FILE_SIZE).getBytes();
+    }
+
+    private static byte[] binary() {
+        byte[] bytes = new byte[FILE_SIZE];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Averages the CPU time used by this process over the benchmark invocations of an iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class CpuTime {
+        private long cpuNanos;
+
+        private long invocations;
+
+        private long startNanos;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cpuNanos = 0;
+            invocations = 0;
+        }
+
+        @Setup(Level.Invocation)
+        public void before() {
+            startNanos = processCpuNanos();
+        }
+
+        @TearDown(Level.Invocation)
+        public void after() {
+            cpuNanos += processCpuNanos() - startNanos;
+            invocations++;
+        }
+
+        public double cpuMillisPerOp() {
+            return invocations == 0 ? 0 : cpuNanos / 1e6 / invocations;
+        }
+
+        private static long processCpuNanos() {
+            return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+        }
+    }
+
+}
@@ -46,6 +46,8 @@ import static com.xebialabs.overthere.ConnectionOptions.*;
 import static com.xebialabs.overthere.OperatingSystemFamily.UNIX;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.*;
 import static com.xebialabs.overthere.ssh.SshConnectionType.SFTP;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -203,6 +205,15 @@ public class SshConnectionTest {
         connection.close();
     }
 
+    @Test
+    public void shouldCapUploadParallelismAtDefaultMaxSessions() {
+        connectionOptions.set(UPLOAD_PARALLELISM, 32);
+        assertThat(newConnectionWithClient(client).uploadParallelism, equalTo(SshConnection.UPLOAD_PARALLELISM_MAX));
+
+        connectionOptions.set(UPLOAD_PARALLELISM, 4);
+        assertThat(newConnectionWithClient(client).uploadParallelism, equalTo(4));
+    }
+
     private SshConnection newConnectionWithClient(SSHClient client) {
         return new PresetClientSshConnection(connectionOptions, client);
     }
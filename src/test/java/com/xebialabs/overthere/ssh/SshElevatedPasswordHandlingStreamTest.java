@@ -32,6 +32,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PASSWORD_PROMPT_REGEX_DEFAULT;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
@@ -77,6 +80,50 @@ public class SshElevatedPasswordHandlingStreamTest {
         verifyZeroInteractions(os);
     }
 
+    @Test
+    public void shouldSendPasswordOnMatchingOutputReadInBlocks() throws IOException {
+        InputStream is = new ByteArrayInputStream("Last login: today\r\n[sudo] password for user bar:".getBytes());
+        SshElevatedPasswordHandlingStream foo = new SshElevatedPasswordHandlingStream(is, os, "foo", SUDO_PASSWORD_PROMPT_REGEX_DEFAULT, 1024);
+        readStreamInBlocks(foo, 7);
+        verify(os).write("foo\r\n".getBytes());
+    }
+
+    @Test
+    public void shouldSendPasswordOnPromptAtEndOfLongLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (line.length() < 3 * SshElevatedPasswordHandlingStream.WINDOW_SIZE) {
+            line.append("x");
+        }
+        InputStream is = new ByteArrayInputStream((line + " password for user bar:").getBytes());
+        SshElevatedPasswordHandlingStream foo = new SshElevatedPasswordHandlingStream(is, os, "foo", SUDO_PASSWORD_PROMPT_REGEX_DEFAULT, 0);
+        readStreamInBlocks(foo, 100);
+        verify(os).write("foo\r\n".getBytes());
+    }
+
+    @Test
+    public void shouldSendPasswordAgainOnRepeatedPrompt() throws IOException {
+        InputStream is = new ByteArrayInputStream("Password:\r\nSorry, try again.\r\nPassword:".getBytes());
+        SshElevatedPasswordHandlingStream foo = new SshElevatedPasswordHandlingStream(is, os, "foo", SUDO_PASSWORD_PROMPT_REGEX_DEFAULT, 64);
+        readStreamInBlocks(foo, 1024);
+        verify(os, times(2)).write("foo\r\n".getBytes());
+    }
+
+    @Test
+    public void shouldStopScanningAfterScanLimit() throws IOException {
+        InputStream is = new ByteArrayInputStream("some output that is longer than the scan limit\r\nPassword:".getBytes());
+        SshElevatedPasswordHandlingStream foo = new SshElevatedPasswordHandlingStream(is, os, "foo", SUDO_PASSWORD_PROMPT_REGEX_DEFAULT, 16);
+        readStreamInBlocks(foo, 10);
+        assertThat(foo.isScanning(), is(false));
+        verifyZeroInteractions(os);
+    }
+
+    private static void readStreamInBlocks(SshElevatedPasswordHandlingStream foo, int blockSize) throws IOException {
+        byte[] buffer = new byte[blockSize + 2];
+        while (foo.read(buffer, 1, blockSize) != -1) {
+            // discard
+        }
+    }
+
     private static void readStream(SshElevatedPasswordHandlingStream foo) throws IOException {
         while (foo.available() > 0) {
             foo.read();
@@ -22,10 +22,34 @@
  */
 package com.xebialabs.overthere.ssh;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.ConnectionOptions;
+import com.xebialabs.overthere.OverthereProcess;
+import com.xebialabs.overthere.local.LocalConnection;
+import com.xebialabs.overthere.util.DefaultAddressPortMapper;
+
+import static com.xebialabs.overthere.ConnectionOptions.ADDRESS;
+import static com.xebialabs.overthere.ConnectionOptions.OPERATING_SYSTEM;
+import static com.xebialabs.overthere.ConnectionOptions.PASSWORD;
+import static com.xebialabs.overthere.ConnectionOptions.USERNAME;
 import static com.xebialabs.overthere.OperatingSystemFamily.UNIX;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.ALLOCATE_PTY;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.CONNECTION_TYPE;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SSH_PROTOCOL;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_STREAM_READS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_STREAM_WRITES;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_USERNAME;
+import static com.xebialabs.overthere.ssh.SshConnectionType.SUDO;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static com.xebialabs.overthere.util.OverthereUtils.read;
+import static com.xebialabs.overthere.util.OverthereUtils.write;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.not;
@@ -59,4 +83,103 @@ public class SshElevatedUserFileTest {
         assertThat(f1.hashCode(), is(f2.hashCode()));
     }
 
+    @Test
+    public void shouldStreamReadsThroughElevatedReadFileCommand() throws IOException {
+        File contents = File.createTempFile("elevated", ".txt");
+        contents.deleteOnExit();
+        write("secret".getBytes(), LocalConnection.getLocalConnection().getFile(contents.getPath()));
+
+        ConnectionOptions options = sudoOptions();
+        options.set(SUDO_STREAM_READS, true);
+        RecordingSudoConnection sudoConnection = new RecordingSudoConnection(options);
+        try {
+            assertThat(new String(read(sudoConnection.getFile(contents.getPath()))), is("secret"));
+            assertThat(sudoConnection.started.size(), is(1));
+            assertThat(sudoConnection.started.get(0), is("sudo -u some-other-user cat " + contents.getPath()));
+        } finally {
+            closeQuietly(sudoConnection);
+        }
+    }
+
+    @Test
+    public void shouldStreamWritesThroughElevatedWriteFileCommand() throws IOException {
+        File target = File.createTempFile("elevated", ".txt");
+        target.deleteOnExit();
+
+        ConnectionOptions options = sudoOptions();
+        options.set(SUDO_STREAM_WRITES, true);
+        RecordingSudoConnection sudoConnection = new RecordingSudoConnection(options);
+        try {
+            write("secret".getBytes(), sudoConnection.getFile(target.getPath()));
+            assertThat(new String(read(LocalConnection.getLocalConnection().getFile(target.getPath()))), is("secret"));
+            assertThat(sudoConnection.started.size(), is(1));
+            assertThat(sudoConnection.started.get(0), is("sudo -u some-other-user dd of=" + target.getPath() + " bs=64k"));
+        } finally {
+            closeQuietly(sudoConnection);
+        }
+    }
+
+    @Test
+    public void shouldNotStreamWritesByDefault() {
+        SshSudoConnection sudoConnection = new SshSudoConnection(SSH_PROTOCOL, sudoOptions(), new DefaultAddressPortMapper());
+        try {
+            assertThat(sudoConnection.canStreamWrites(), is(false));
+        } finally {
+            closeQuietly(sudoConnection);
+        }
+    }
+
+    @Test
+    public void shouldNotStreamReadsWhenPtyIsAllocated() {
+        ConnectionOptions options = sudoOptions();
+        options.set(SUDO_STREAM_READS, true);
+        options.set(ALLOCATE_PTY, "xterm:80:24:0:0");
+        SshSudoConnection sudoConnection = new SshSudoConnection(SSH_PROTOCOL, options, new DefaultAddressPortMapper());
+        try {
+            assertThat(sudoConnection.canStreamReads(), is(false));
+        } finally {
+            closeQuietly(sudoConnection);
+        }
+    }
+
+    @Test
+    public void shouldNotStreamReadsByDefault() {
+        SshSudoConnection sudoConnection = new SshSudoConnection(SSH_PROTOCOL, sudoOptions(), new DefaultAddressPortMapper());
+        try {
+            assertThat(sudoConnection.canStreamReads(), is(false));
+        } finally {
+            closeQuietly(sudoConnection);
+        }
+    }
+
+    private static ConnectionOptions sudoOptions() {
+        ConnectionOptions options = new ConnectionOptions();
+        options.set(CONNECTION_TYPE, SUDO);
+        options.set(OPERATING_SYSTEM, UNIX);
+        options.set(ADDRESS, "nowhere.example.com");
+        options.set(USERNAME, "some-user");
+        options.set(PASSWORD, "foo");
+        options.set(SUDO_USERNAME, "some-other-user");
+        return options;
+    }
+
+    /**
+     * Records the processed command lines it is asked to start and runs the last part of them, i.e. the command without the
+     * sudo prefix, locally.
+     */
+    private static class RecordingSudoConnection extends SshSudoConnection {
+        private final List<String> started = new ArrayList<String>();
+
+        RecordingSudoConnection(ConnectionOptions options) {
+            super(SSH_PROTOCOL, options, new DefaultAddressPortMapper());
+        }
+
+        @Override
+        public OverthereProcess startProcess(CmdLine commandLine) {
+            CmdLine processed = processCommandLine(commandLine);
+            started.add(processed.toCommandLine(UNIX, false));
+            return LocalConnection.getLocalConnection().startProcess(stripPrefixedPseudoCommand(commandLine));
+        }
+    }
+
 }
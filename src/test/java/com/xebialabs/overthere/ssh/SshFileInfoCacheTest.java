@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SshFileInfoCacheTest {
+
+    @Test
+    public void shouldNotCacheWhenDisabled() {
+        SshFileInfoCache<String> cache = new SshFileInfoCache<String>(0, "/");
+        cache.put("/tmp", "info");
+        assertThat(cache.get("/tmp"), nullValue());
+    }
+
+    @Test
+    public void shouldExpireEntries() throws InterruptedException {
+        SshFileInfoCache<String> cache = new SshFileInfoCache<String>(50, "/");
+        cache.put("/tmp", "info");
+        assertThat(cache.get("/tmp"), equalTo("info"));
+        Thread.sleep(100);
+        assertThat(cache.get("/tmp"), nullValue());
+    }
+
+    @Test
+    public void shouldInvalidatePathWithParentsAndChildren() {
+        SshFileInfoCache<String> cache = new SshFileInfoCache<String>(60000, "/");
+        for (String path : new String[]{"/", "/tmp", "/tmp/dir", "/tmp/dir/file", "/tmp/dir/sub/file", "/tmp/directory", "/tmp/other"}) {
+            cache.put(path, path);
+        }
+
+        cache.invalidate("/tmp/dir");
+
+        assertThat(cache.get("/"), nullValue());
+        assertThat(cache.get("/tmp"), nullValue());
+        assertThat(cache.get("/tmp/dir"), nullValue());
+        assertThat(cache.get("/tmp/dir/file"), nullValue());
+        assertThat(cache.get("/tmp/dir/sub/file"), nullValue());
+        assertThat(cache.get("/tmp/directory"), equalTo("/tmp/directory"));
+        assertThat(cache.get("/tmp/other"), equalTo("/tmp/other"));
+    }
+
+}
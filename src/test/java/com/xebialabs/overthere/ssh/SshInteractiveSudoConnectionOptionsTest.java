@@ -39,7 +39,10 @@ import static com.xebialabs.overthere.ssh.SshConnectionBuilder.ALLOCATE_PTY;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.CONNECTION_TYPE;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SSH_PROTOCOL;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_PASSWORD_PROMPT_REGEX;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_STREAM_READS;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_STREAM_WRITES;
 import static com.xebialabs.overthere.ssh.SshConnectionBuilder.SUDO_USERNAME;
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.TAR_DIRECTORY_TRANSFER;
 import static com.xebialabs.overthere.ssh.SshConnectionType.SFTP;
 import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -101,4 +104,22 @@ public class SshInteractiveSudoConnectionOptionsTest {
         }
 
     }
+
+    @Test
+    public void shouldNotStreamFileContentsWhenPasswordPromptIsAnswered() {
+        ConnectionOptions options = new ConnectionOptions(connectionOptions);
+        options.set(ALLOCATE_DEFAULT_PTY, false);
+        options.set(ALLOCATE_PTY, "");
+        options.set(SUDO_STREAM_READS, true);
+        options.set(SUDO_STREAM_WRITES, true);
+        options.set(TAR_DIRECTORY_TRANSFER, true);
+        SshInteractiveSudoConnection sshInteractiveSudoConnection = new SshInteractiveSudoConnection(SSH_PROTOCOL, options, new DefaultAddressPortMapper());
+        try {
+            assertThat(sshInteractiveSudoConnection.canStreamReads(), equalTo(false));
+            assertThat(sshInteractiveSudoConnection.canStreamWrites(), equalTo(false));
+            assertThat(sshInteractiveSudoConnection.canTransferAsTar(), equalTo(false));
+        } finally {
+            closeQuietly(sshInteractiveSudoConnection);
+        }
+    }
 }
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.schmizz.sshj.userauth.keyprovider.KeyPairWrapper;
+import net.schmizz.sshj.userauth.keyprovider.KeyProvider;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.testng.Assert.fail;
+
+public class SshKeyProviderCacheTest {
+
+    private KeyPair keyPair;
+
+    private SshKeyProviderCache cache;
+
+    private AtomicInteger loads;
+
+    @BeforeClass
+    public void generateKeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @BeforeMethod
+    public void init() {
+        cache = new SshKeyProviderCache(2);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void shouldLoadKeyOnce() throws IOException {
+        String cacheKey = SshKeyProviderCache.keyForPrivateKey("material", null);
+
+        KeyProvider first = cache.get(cacheKey, countingLoader());
+        KeyProvider second = cache.get(cacheKey, countingLoader());
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(second, sameInstance(first));
+        assertThat(first.getPrivate(), equalTo(keyPair.getPrivate()));
+    }
+
+    @Test
+    public void shouldLoadKeyOnceForConcurrentConnections() throws Exception {
+        final String cacheKey = SshKeyProviderCache.keyForPrivateKey("material", null);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<KeyProvider>> results = new ArrayList<Future<KeyProvider>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<KeyProvider>() {
+                    @Override
+                    public KeyProvider call() throws Exception {
+                        start.await();
+                        return cache.get(cacheKey, countingLoader());
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<KeyProvider> result : results) {
+                assertThat(result.get(), sameInstance(results.get(0).get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    public void shouldNotShareKeysBetweenPassphrases() {
+        assertThat(SshKeyProviderCache.keyForPrivateKey("material", "right"), not(equalTo(SshKeyProviderCache.keyForPrivateKey("material", "wrong"))));
+        assertThat(SshKeyProviderCache.keyForPrivateKey("material", "right"), not(equalTo(SshKeyProviderCache.keyForPrivateKey("material", null))));
+        assertThat(SshKeyProviderCache.keyForPrivateKey("material", null), not(equalTo(SshKeyProviderCache.keyForPrivateKey("other", null))));
+    }
+
+    @Test
+    public void shouldNotKeepKeysThatCannotBeRead() throws IOException {
+        String cacheKey = SshKeyProviderCache.keyForPrivateKey("material", "wrong");
+        try {
+            cache.get(cacheKey, new SshKeyProviderCache.Loader() {
+                @Override
+                public KeyProvider load() throws IOException {
+                    throw new IOException("Cannot decrypt key");
+                }
+            });
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), equalTo("Cannot decrypt key"));
+        }
+        assertThat(cache.size(), equalTo(0));
+
+        cache.get(cacheKey, countingLoader());
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    public void shouldReadChangedKeyFileAgain() throws IOException {
+        File keyFile = File.createTempFile("id_rsa", "");
+        keyFile.deleteOnExit();
+        String before = SshKeyProviderCache.keyForPrivateKeyFile(keyFile.getPath(), null);
+        assertThat(keyFile.setLastModified(keyFile.lastModified() - 60000), equalTo(true));
+        String after = SshKeyProviderCache.keyForPrivateKeyFile(keyFile.getPath(), null);
+
+        assertThat(after, not(equalTo(before)));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedKeys() throws IOException {
+        cache.get("a", countingLoader());
+        cache.get("b", countingLoader());
+        cache.get("a", countingLoader());
+        cache.get("c", countingLoader());
+        assertThat(cache.size(), equalTo(2));
+        assertThat(loads.get(), equalTo(3));
+
+        cache.get("a", countingLoader());
+        assertThat(loads.get(), equalTo(3));
+        cache.get("b", countingLoader());
+        assertThat(loads.get(), equalTo(4));
+    }
+
+    private SshKeyProviderCache.Loader countingLoader() {
+        return new SshKeyProviderCache.Loader() {
+            @Override
+            public KeyProvider load() {
+                loads.incrementAndGet();
+                return new KeyPairWrapper(keyPair);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.OverthereFile;
+import com.xebialabs.overthere.RuntimeIOException;
+import com.xebialabs.overthere.TemporaryFolder;
+import com.xebialabs.overthere.local.LocalFile;
+
+import static com.xebialabs.overthere.util.OverthereUtils.read;
+import static com.xebialabs.overthere.util.OverthereUtils.write;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SshParallelUploadTest {
+
+    private TemporaryFolder temp = new TemporaryFolder();
+
+    private OverthereFile source;
+
+    private OverthereFile target;
+
+    @BeforeMethod
+    public void createTree() throws IOException {
+        temp.create();
+        source = LocalFile.valueOf(temp.newFolder("source"));
+        target = LocalFile.valueOf(new File(temp.getRoot(), "target"));
+        write("a".getBytes(), source.getFile("a.txt"));
+        write("b".getBytes(), source.getFile("b.txt"));
+        source.getFile("sub").mkdir();
+        source.getFile("sub").getFile("deeper").mkdir();
+        write("c".getBytes(), source.getFile("sub").getFile("c.txt"));
+        write("d".getBytes(), source.getFile("sub").getFile("deeper").getFile("d.txt"));
+    }
+
+    @AfterMethod
+    public void deleteTree() {
+        temp.delete();
+    }
+
+    @Test
+    public void shouldUploadTreeInParallel() {
+        final CyclicBarrier twoAtATime = new CyclicBarrier(2);
+        new SshParallelUpload(2) {
+            @Override
+            protected void uploadFile(OverthereFile sourceFile, OverthereFile targetFile) throws IOException {
+                assertThat(targetFile.getParentFile().isDirectory(), equalTo(true));
+                try {
+                    twoAtATime.await(10, TimeUnit.SECONDS);
+                } catch (Exception exc) {
+                    throw new IOException("Files are not uploaded in parallel", exc);
+                }
+                write(read(sourceFile), targetFile);
+            }
+        }.upload(source, target);
+
+        assertThat(new String(read(target.getFile("a.txt"))), equalTo("a"));
+        assertThat(new String(read(target.getFile("b.txt"))), equalTo("b"));
+        assertThat(new String(read(target.getFile("sub").getFile("c.txt"))), equalTo("c"));
+        assertThat(new String(read(target.getFile("sub").getFile("deeper").getFile("d.txt"))), equalTo("d"));
+    }
+
+    @Test(expectedExceptions = RuntimeIOException.class, expectedExceptionsMessageRegExp = ".*Disk full.*")
+    public void shouldThrowFirstFailure() {
+        new SshParallelUpload(3) {
+            @Override
+            protected void uploadFile(OverthereFile sourceFile, OverthereFile targetFile) throws IOException {
+                throw new IOException("Disk full");
+            }
+        }.upload(source, target);
+    }
+
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.ByteStreams;
+import com.xebialabs.overthere.OverthereProcess;
+import com.xebialabs.overthere.RuntimeIOException;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.fail;
+
+public class SshPersistentShellTest {
+
+    private SSHClient client;
+    private Session session;
+    private Session.Command command;
+    private ByteArrayOutputStream stdin;
+
+    @BeforeMethod
+    public void init() throws IOException {
+        client = mock(SSHClient.class);
+        session = mock(Session.class);
+        command = mock(Session.Command.class);
+        stdin = new ByteArrayOutputStream();
+        when(client.startSession()).thenReturn(session);
+        when(session.exec("/bin/sh")).thenReturn(command);
+        when(session.isOpen()).thenReturn(true);
+        when(command.getOutputStream()).thenReturn(stdin);
+    }
+
+    @Test
+    public void shouldSeparateOutputAndExitCodesOfConsecutiveCommands() throws Exception {
+        SshPersistentShell shell = startShell("hello\n\nS_1 0\nworld\n\nS_2 3\n", "\nS_1 \noops\n\nS_2 \n");
+
+        assertThat(shell.tryAcquire(), equalTo(true));
+        OverthereProcess first = shell.start("echo hello", "echo hello");
+        assertThat(shell.tryAcquire(), equalTo(false));
+        assertThat(read(first.getStdout()), equalTo("hello\n"));
+        assertThat(read(first.getStderr()), equalTo(""));
+        assertThat(first.waitFor(), equalTo(0));
+        assertThat(first.exitValue(), equalTo(0));
+
+        assertThat(shell.tryAcquire(), equalTo(true));
+        OverthereProcess second = shell.start("echo world; echo oops >&2; exit 3", "echo world; echo oops >&2; exit 3");
+        assertThat(read(second.getStdout()), equalTo("world\n"));
+        assertThat(read(second.getStderr()), equalTo("oops\n"));
+        assertThat(second.waitFor(), equalTo(3));
+        assertThat(shell.isUsable(), equalTo(true));
+    }
+
+    @Test
+    public void shouldReturnOutputWithoutTrailingNewline() throws Exception {
+        SshPersistentShell shell = startShell("no newline\nS_1 0\n", "\nS_1 \n");
+
+        shell.tryAcquire();
+        OverthereProcess process = shell.start("printf 'no newline'", "printf 'no newline'");
+        assertThat(read(process.getStdout()), equalTo("no newline"));
+        assertThat(read(process.getStderr()), equalTo(""));
+        assertThat(process.waitFor(), equalTo(0));
+    }
+
+    @Test
+    public void shouldFindMarkerSplitAcrossReads() throws Exception {
+        when(command.getInputStream()).thenReturn(oneByteAtATime("a\nS_ b\n\nS_1 42\n"));
+        when(command.getErrorStream()).thenReturn(oneByteAtATime("\nS_1 \n"));
+        SshPersistentShell shell = new SshPersistentShell(null, client, "S_");
+
+        shell.tryAcquire();
+        OverthereProcess process = shell.start("true", "true");
+        assertThat(read(process.getStdout()), equalTo("a\nS_ b\n"));
+        assertThat(read(process.getStderr()), equalTo(""));
+        assertThat(process.waitFor(), equalTo(42));
+    }
+
+    @Test
+    public void shouldQuoteCommandForInnerShell() throws Exception {
+        SshPersistentShell shell = startShell("\nS_1 0\n", "\nS_1 \n");
+
+        shell.tryAcquire();
+        OverthereProcess process = shell.start("echo 'it''s'", "echo 'it''s'");
+        read(process.getStdout());
+        read(process.getStderr());
+        process.waitFor();
+        assertThat(stdin.toString("UTF-8"), containsString("sh -c 'echo '\\''it'\\'''\\''s'\\''' </dev/null; "));
+    }
+
+    @Test(expectedExceptions = RuntimeIOException.class)
+    public void shouldFailWhenShellEndsBeforeMarker() throws Exception {
+        SshPersistentShell shell = startShell("partial", "");
+
+        shell.tryAcquire();
+        OverthereProcess process = shell.start("sleep 100", "sleep 100");
+        assertThat(read(process.getStdout()), equalTo("partial"));
+        read(process.getStderr());
+        try {
+            process.waitFor();
+        } finally {
+            assertThat(shell.isUsable(), equalTo(false));
+            verify(session).close();
+        }
+    }
+
+    @Test
+    public void shouldMarkShellBrokenWhenWaitIsInterrupted() throws Exception {
+        SshPersistentShell shell = startShell("", "");
+
+        shell.tryAcquire();
+        OverthereProcess process = shell.start("sleep 100", "sleep 100");
+        Thread.currentThread().interrupt();
+        try {
+            process.waitFor();
+            fail("Expected InterruptedException");
+        } catch (InterruptedException expected) {
+            // expected
+        }
+        assertThat(shell.isUsable(), equalTo(false));
+        verify(session).close();
+        assertThat(shell.tryAcquire(), equalTo(true));
+    }
+
+    @Test
+    public void shouldAllowDestroyWhileWaiting() throws Exception {
+        SshPersistentShell shell = startShell("", "");
+
+        shell.tryAcquire();
+        final OverthereProcess process = shell.start("sleep 100", "sleep 100");
+        final AtomicReference<Throwable> waitResult = new AtomicReference<Throwable>();
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    process.waitFor();
+                } catch (Throwable t) {
+                    waitResult.set(t);
+                }
+            }
+        });
+        waiter.start();
+        Thread.sleep(100);
+
+        process.destroy();
+        waiter.join(5000);
+
+        assertThat(waiter.isAlive(), equalTo(false));
+        assertThat(waitResult.get(), instanceOf(RuntimeIOException.class));
+        assertThat(shell.isUsable(), equalTo(false));
+    }
+
+    private SshPersistentShell startShell(String stdout, String stderr) throws IOException {
+        when(command.getInputStream()).thenReturn(new ByteArrayInputStream(stdout.getBytes("UTF-8")));
+        when(command.getErrorStream()).thenReturn(new ByteArrayInputStream(stderr.getBytes("UTF-8")));
+        return new SshPersistentShell(null, client, "S_");
+    }
+
+    private static InputStream oneByteAtATime(String s) throws IOException {
+        return new FilterInputStream(new ByteArrayInputStream(s.getBytes("UTF-8"))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    private static String read(InputStream in) throws IOException {
+        return new String(ByteStreams.toByteArray(in), "UTF-8");
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.ConnectionOptions;
+import com.xebialabs.overthere.util.DefaultAddressPortMapper;
+
+import static com.xebialabs.overthere.ssh.SshConnectionBuilder.PORT_FORWARDING_THREADS;
+import static com.xebialabs.overthere.util.OverthereUtils.closeQuietly;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+public class SshPortForwardingEngineTest {
+
+    private EmbeddedSftpServer server;
+
+    private EchoServer echoServer;
+
+    private SshTunnelConnection tunnel;
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void startServers() throws IOException {
+        server = new EmbeddedSftpServer();
+        echoServer = new EchoServer();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServers() throws IOException {
+        executor.shutdownNow();
+        closeQuietly(echoServer);
+        closeQuietly(server);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void closeTunnel() {
+        if (tunnel != null) {
+            tunnel.close();
+            tunnel = null;
+        }
+    }
+
+    @Test
+    public void shouldForwardAllMappedAddressesOnOneThread() throws Exception {
+        int threadsBefore = countThreads("SSH port forwarding thread");
+        tunnel = openTunnel(1);
+
+        for (int i = 0; i < 10; i++) {
+            InetSocketAddress local = tunnel.map(new InetSocketAddress("127.0.0.1", echoServer.getPort()));
+            assertThat(echo(local, "hello " + i), equalTo("hello " + i));
+            tunnel.map(InetSocketAddress.createUnresolved("target" + i, 22));
+        }
+
+        assertThat(countThreads("SSH port forwarding thread"), equalTo(threadsBefore + 1));
+        assertThat(countThreads("SSH local port forward thread"), equalTo(0));
+    }
+
+    @Test
+    public void shouldForwardLargePayloadsOverConcurrentConnections() throws Exception {
+        tunnel = openTunnel(2);
+        final InetSocketAddress local = tunnel.map(new InetSocketAddress("127.0.0.1", echoServer.getPort()));
+
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 8; i++) {
+            final int seed = i;
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    byte[] payload = new byte[1024 * 1024 + seed];
+                    new Random(seed).nextBytes(payload);
+                    return Arrays.equals(payload, roundTrip(local, payload));
+                }
+            }));
+        }
+
+        for (Future<Boolean> result : results) {
+            assertThat(result.get(), equalTo(true));
+        }
+    }
+
+    @Test
+    public void shouldCloseForwardedConnectionWhenTargetIsUnreachable() throws Exception {
+        tunnel = openTunnel(1);
+        ServerSocket unused = new ServerSocket(0);
+        int closedPort = unused.getLocalPort();
+        unused.close();
+
+        InetSocketAddress local = tunnel.map(new InetSocketAddress("127.0.0.1", closedPort));
+        Socket socket = new Socket(local.getHostName(), local.getPort());
+        try {
+            socket.setSoTimeout(10000);
+            assertThat(socket.getInputStream().read(), equalTo(-1));
+        } finally {
+            socket.close();
+        }
+
+        InetSocketAddress echo = tunnel.map(new InetSocketAddress("127.0.0.1", echoServer.getPort()));
+        assertThat(echo(echo, "still forwarding"), equalTo("still forwarding"));
+    }
+
+    @Test
+    public void shouldUseThreadPerForwardByDefault() throws Exception {
+        tunnel = openTunnel(server.getConnectionOptions(server.getPort()));
+
+        InetSocketAddress local = tunnel.map(new InetSocketAddress("127.0.0.1", echoServer.getPort()));
+
+        assertThat(echo(local, "legacy"), equalTo("legacy"));
+        assertThat(countThreads("SSH local port forward thread"), not(equalTo(0)));
+    }
+
+    private SshTunnelConnection openTunnel(int threads) {
+        ConnectionOptions options = server.getConnectionOptions(server.getPort());
+        options.set(PORT_FORWARDING_THREADS, threads);
+        return openTunnel(options);
+    }
+
+    private SshTunnelConnection openTunnel(ConnectionOptions options) {
+        SshTunnelConnection connection = new SshTunnelConnection(SshJumpstationConnectionBuilder.SSH_JUMPSTATION_PROTOCOL, options,
+                DefaultAddressPortMapper.INSTANCE);
+        connection.connect();
+        return connection;
+    }
+
+    private static String echo(InetSocketAddress address, String message) throws IOException {
+        return new String(roundTrip(address, message.getBytes("UTF-8")), "UTF-8");
+    }
+
+    /**
+     * Writes the payload on a separate thread and reads back as many bytes as were written. The embedded server does not pass
+     * on the end of the stream to the target, so the echo server cannot be expected to close the connection.
+     */
+    private static byte[] roundTrip(InetSocketAddress address, final byte[] payload) throws IOException {
+        final Socket socket = new Socket(address.getHostName(), address.getPort());
+        try {
+            socket.setSoTimeout(30000);
+            Thread writer = new Thread("payload writer") {
+                @Override
+                public void run() {
+                    try {
+                        OutputStream out = socket.getOutputStream();
+                        out.write(payload);
+                        out.flush();
+                    } catch (IOException ignore) {
+                        // The reader fails on a short read.
+                    }
+                }
+            };
+            writer.start();
+
+            byte[] received = new byte[payload.length];
+            InputStream in = socket.getInputStream();
+            int total = 0;
+            int n;
+            while (total < received.length && (n = in.read(received, total, Math.min(received.length - total, 8192))) > 0) {
+                total += n;
+            }
+            assertThat(total, equalTo(payload.length));
+            return received;
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static int countThreads(String prefix) {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.isAlive() && t.getName().startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.OverthereProcess;
+import com.xebialabs.overthere.TemporaryFolder;
+import com.xebialabs.overthere.local.LocalConnection;
+import com.xebialabs.overthere.local.LocalFile;
+import com.xebialabs.overthere.util.DaemonThreadFactory;
+
+import static com.xebialabs.overthere.util.OverthereUtils.write;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.fail;
+
+/**
+ * Reads the stdout of local processes, standing in for the ones on the remote host.
+ */
+public class SshProcessInputStreamTest {
+
+    private static final Executor DRAIN_EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("test drainer"));
+
+    private TemporaryFolder temp = new TemporaryFolder();
+
+    @BeforeMethod
+    public void createFolder() throws IOException {
+        temp.create();
+    }
+
+    @AfterMethod
+    public void deleteFolder() {
+        temp.delete();
+    }
+
+    @Test
+    public void shouldReturnStdoutOfCommand() throws IOException {
+        byte[] contents = new byte[256 * 1024];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte) i;
+        }
+        File file = temp.newFile("contents.bin");
+        write(contents, LocalFile.valueOf(file));
+
+        InputStream in = new SshProcessInputStream(start("cat", file.getPath()), file.getPath(), DRAIN_EXECUTOR);
+        try {
+            assertThat(readFully(in), equalTo(contents));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void shouldReportFailureOfCommandAtEndOfStream() throws IOException {
+        InputStream in = new SshProcessInputStream(start("cat", new File(temp.getRoot(), "missing").getPath()), "missing", DRAIN_EXECUTOR);
+        try {
+            readFully(in);
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), containsString("Cannot read missing"));
+            assertThat(expected.getMessage(), containsString("exitValue=1"));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void shouldDestroyCommandWhenClosedBeforeEndOfStream() throws IOException {
+        OverthereProcess process = mock(OverthereProcess.class);
+        when(process.getStdout()).thenReturn(new ByteArrayInputStream(new byte[1024]));
+        when(process.getStderr()).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+        InputStream in = new SshProcessInputStream(process, "partly read", DRAIN_EXECUTOR);
+        in.read();
+        in.close();
+
+        verify(process).destroy();
+    }
+
+    @Test
+    public void shouldNotDestroyCommandWhenClosedAtEndOfStream() throws IOException, InterruptedException {
+        OverthereProcess process = mock(OverthereProcess.class);
+        when(process.getStdout()).thenReturn(new ByteArrayInputStream(new byte[16]));
+        when(process.getStderr()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(process.waitFor()).thenReturn(0);
+
+        InputStream in = new SshProcessInputStream(process, "fully read", DRAIN_EXECUTOR);
+        readFully(in);
+        in.close();
+
+        verify(process, never()).destroy();
+    }
+
+    private static OverthereProcess start(String... args) {
+        return LocalConnection.getLocalConnection().startProcess(CmdLine.build(args));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.OverthereProcess;
+import com.xebialabs.overthere.TemporaryFolder;
+import com.xebialabs.overthere.local.LocalConnection;
+import com.xebialabs.overthere.local.LocalFile;
+import com.xebialabs.overthere.util.DaemonThreadFactory;
+
+import static com.xebialabs.overthere.util.OverthereUtils.read;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.testng.Assert.fail;
+
+/**
+ * Writes to the stdin of local processes, standing in for the ones on the remote host.
+ */
+public class SshProcessOutputStreamTest {
+
+    private static final Executor DRAIN_EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("test drainer"));
+
+    private TemporaryFolder temp = new TemporaryFolder();
+
+    @BeforeMethod
+    public void createFolder() throws IOException {
+        temp.create();
+    }
+
+    @AfterMethod
+    public void deleteFolder() {
+        temp.delete();
+    }
+
+    @Test
+    public void shouldSendBytesToStdinOfCommand() throws IOException {
+        byte[] contents = new byte[256 * 1024];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte) i;
+        }
+        File file = new File(temp.getRoot(), "contents.bin");
+
+        OutputStream out = new SshProcessOutputStream(start("dd", "of=" + file.getPath(), "bs=64k"), file.getPath(), DRAIN_EXECUTOR);
+        out.write(contents);
+        out.close();
+
+        assertThat(read(LocalFile.valueOf(file)), equalTo(contents));
+    }
+
+    @Test
+    public void shouldSendSingleBytesToStdinOfCommand() throws IOException {
+        File file = new File(temp.getRoot(), "hello.txt");
+
+        OutputStream out = new SshProcessOutputStream(start("sh", "-c", "cat > " + file.getPath()), file.getPath(), DRAIN_EXECUTOR);
+        out.write("hello".getBytes("UTF-8"));
+        out.write('!');
+        out.close();
+        out.close();
+
+        assertThat(new String(read(LocalFile.valueOf(file)), "UTF-8"), equalTo("hello!"));
+    }
+
+    @Test
+    public void shouldNotBlockOnStdoutOfCommand() throws IOException {
+        File file = new File(temp.getRoot(), "tee.bin");
+
+        OutputStream out = new SshProcessOutputStream(start("tee", file.getPath()), file.getPath(), DRAIN_EXECUTOR);
+        out.write(new byte[1024 * 1024]);
+        out.close();
+
+        assertThat(file.length(), equalTo(1024L * 1024));
+    }
+
+    @Test
+    public void shouldReportFailureOfCommand() throws IOException {
+        File file = new File(temp.getRoot(), "missing/contents.bin");
+
+        OutputStream out = new SshProcessOutputStream(start("dd", "of=" + file.getPath()), file.getPath(), DRAIN_EXECUTOR);
+        try {
+            out.write(new byte[16]);
+            out.close();
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), containsString("Cannot write to " + file.getPath()));
+            assertThat(expected.getMessage(), containsString("No such file or directory"));
+        }
+    }
+
+    private static OverthereProcess start(String... args) {
+        return LocalConnection.getLocalConnection().startProcess(CmdLine.build(args));
+    }
+
+}
@@ -22,11 +22,32 @@
  */
 package com.xebialabs.overthere.ssh;
 
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.util.Calendar;
+import java.util.List;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+import com.xebialabs.overthere.OverthereFile;
+import com.xebialabs.overthere.RuntimeIOException;
+
+import static com.xebialabs.overthere.OperatingSystemFamily.UNIX;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.fail;
 
 public class SshScpFileTest {
 
@@ -78,4 +99,187 @@ public class SshScpFileTest {
         assertThat("Should be a directory", results.isDirectory);
         assertThat("Should be executable", results.canExecute);
     }
+
+    @Test
+    public void shouldCacheFileInfoUntilFileIsModified() {
+        SshScpConnection cachingConnection = mock(SshScpConnection.class);
+        cachingConnection.getFileInfoCommand = "ls -ld {0}";
+        cachingConnection.deleteFileCommand = "rm -f {0}";
+        cachingConnection.fileInfoCache = new SshFileInfoCache<SshScpFile.LsResults>(60000, "/");
+        when(cachingConnection.getHostOperatingSystem()).thenReturn(UNIX);
+        doCallRealMethod().when(cachingConnection).invalidateFileInfo(anyString());
+        when(cachingConnection.execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                ((OverthereExecutionOutputHandler) invocation.getArguments()[0]).handleLine("-rw-r--r-- 1 user group 42 Dec 17 15:28 /foo/bar");
+                return 0;
+            }
+        });
+
+        SshScpFile file = new SshScpFile(cachingConnection, "/foo/bar");
+        assertThat(file.exists(), equalTo(true));
+        assertThat(file.isFile(), equalTo(true));
+        assertThat(new SshScpFile(cachingConnection, "/foo/bar").length(), equalTo(42L));
+        verify(cachingConnection, times(1)).execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class));
+
+        file.deleteFile();
+        file.canRead();
+        verify(cachingConnection, times(3)).execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class));
+    }
+
+    @Test
+    public void shouldDiscardFileInfoCachedWhileFileWasBeingModified() {
+        final SshScpConnection cachingConnection = mock(SshScpConnection.class);
+        cachingConnection.getFileInfoCommand = "ls -ld {0}";
+        cachingConnection.deleteFileCommand = "rm -f {0}";
+        cachingConnection.fileInfoCache = new SshFileInfoCache<SshScpFile.LsResults>(60000, "/");
+        when(cachingConnection.getHostOperatingSystem()).thenReturn(UNIX);
+        doCallRealMethod().when(cachingConnection).invalidateFileInfo(anyString());
+        final boolean[] deleted = new boolean[1];
+        when(cachingConnection.execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                CmdLine cmdLine = (CmdLine) invocation.getArguments()[2];
+                if (cmdLine.toString().contains("rm -f")) {
+                    // another caller looks at the file while it is being deleted
+                    assertThat(new SshScpFile(cachingConnection, "/foo/bar").exists(), equalTo(true));
+                    deleted[0] = true;
+                    return 0;
+                }
+                if (deleted[0]) {
+                    return 2;
+                }
+                ((OverthereExecutionOutputHandler) invocation.getArguments()[0]).handleLine("-rw-r--r-- 1 user group 42 Dec 17 15:28 /foo/bar");
+                return 0;
+            }
+        });
+
+        SshScpFile file = new SshScpFile(cachingConnection, "/foo/bar");
+        file.deleteFile();
+        assertThat(file.exists(), equalTo(false));
+    }
+
+    @Test
+    public void shouldReportUnparsableModificationTimeAsRuntimeIOException() {
+        SshScpConnection lsConnection = mock(SshScpConnection.class);
+        lsConnection.getFileInfoCommand = "ls -ld {0}";
+        lsConnection.fileInfoCache = new SshFileInfoCache<SshScpFile.LsResults>(0, "/");
+        when(lsConnection.getHostOperatingSystem()).thenReturn(UNIX);
+        when(lsConnection.execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                ((OverthereExecutionOutputHandler) invocation.getArguments()[0]).handleLine("-rw-r--r-- 1 user group 42 2015-12-17 15:28 /foo/bar");
+                return 0;
+            }
+        });
+
+        try {
+            new SshScpFile(lsConnection, "/foo/bar").lastModified();
+            fail("Expected RuntimeIOException");
+        } catch (RuntimeIOException expected) {
+            assertThat(expected.getMessage(), containsString("modification time"));
+        }
+    }
+
+    @Test
+    public void shouldNotListAttributesWhenCacheIsDisabled() {
+        SshScpConnection listingConnection = mock(SshScpConnection.class);
+        listingConnection.listFilesCommand = "ls -a1 {0}";
+        listingConnection.listFilesWithAttributesCommand = "ls -la {0}";
+        listingConnection.fileInfoCache = new SshFileInfoCache<SshScpFile.LsResults>(0, "/");
+        when(listingConnection.getHostOperatingSystem()).thenReturn(UNIX);
+        when(listingConnection.execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                CmdLine cmdLine = (CmdLine) invocation.getArguments()[2];
+                assertThat(cmdLine.toString(), containsString("ls -a1 /foo"));
+                ((OverthereExecutionOutputHandler) invocation.getArguments()[0]).handleLine("bar");
+                return 0;
+            }
+        });
+
+        assertThat(new SshScpFile(listingConnection, "/foo").listFiles().size(), equalTo(1));
+        verify(listingConnection, times(1)).execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class));
+    }
+
+    @Test
+    public void shouldListContentsOfSymlinkedDirectoryWithAttributes() {
+        final SshScpConnection listingConnection = mock(SshScpConnection.class);
+        listingConnection.listFilesCommand = SshConnectionBuilder.LIST_FILES_COMMAND_DEFAULT;
+        listingConnection.listFilesWithAttributesCommand = SshConnectionBuilder.LIST_FILES_WITH_ATTRIBUTES_COMMAND_DEFAULT;
+        listingConnection.fileInfoCache = new SshFileInfoCache<SshScpFile.LsResults>(60000, "/");
+        when(listingConnection.getHostOperatingSystem()).thenReturn(UNIX);
+        when(listingConnection.getFile(any(OverthereFile.class), anyString())).thenAnswer(new Answer<OverthereFile>() {
+            @Override
+            public OverthereFile answer(InvocationOnMock invocation) {
+                return new SshScpFile(listingConnection, ((OverthereFile) invocation.getArguments()[0]).getPath() + "/" + invocation.getArguments()[1]);
+            }
+        });
+        when(listingConnection.execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                CmdLine cmdLine = (CmdLine) invocation.getArguments()[2];
+                OverthereExecutionOutputHandler stdout = (OverthereExecutionOutputHandler) invocation.getArguments()[0];
+                if (cmdLine.toString().contains("ls -laL /foo/link")) {
+                    stdout.handleLine("total 8");
+                    stdout.handleLine("drwxr-xr-x 2 user group 4096 Dec 17 15:28 .");
+                    stdout.handleLine("drwxr-xr-x 3 user group 4096 Dec 17 15:28 ..");
+                    stdout.handleLine("-rw-r--r-- 1 user group   42 Dec 17 15:28 bar");
+                } else {
+                    stdout.handleLine("lrwxrwxrwx 1 user group 9 Dec 17 15:28 /foo/link -> /foo/real");
+                }
+                return 0;
+            }
+        });
+
+        List<OverthereFile> files = new SshScpFile(listingConnection, "/foo/link").listFiles();
+        assertThat(files.size(), equalTo(1));
+        assertThat(files.get(0).getName(), equalTo("bar"));
+        assertThat(files.get(0).length(), equalTo(42L));
+        verify(listingConnection, times(1)).execute(any(OverthereExecutionOutputHandler.class), any(OverthereExecutionOutputHandler.class), any(CmdLine.class));
+    }
+
+    @Test
+    public void shouldParseListingLineWithSpacesInName() {
+        SshScpFile.LsResults results = new SshScpFile.LsResults();
+        assertThat(sshScpFile.parseLsListingLine(results, "-rw-r--r--  1 ajvanerp staff 1234 Dec 17  2015 my file.txt"), equalTo("my file.txt"));
+        assertThat("Should be a file", results.isFile);
+        assertThat(results.length, equalTo(1234L));
+        assertThat(results.lastModified, equalTo(timestamp(2015, Calendar.DECEMBER, 17, 0, 0)));
+    }
+
+    @Test
+    public void shouldParseListingLineOfSymLinkAndDevice() {
+        SshScpFile.LsResults results = new SshScpFile.LsResults();
+        assertThat(sshScpFile.parseLsListingLine(results, "lrwxrwxrwx 1 root root 7 Jan  2 10:00 lib -> usr/lib"), equalTo("lib"));
+        assertThat("Should not be a directory", !results.isDirectory);
+
+        results = new SshScpFile.LsResults();
+        assertThat(sshScpFile.parseLsListingLine(results, "brw-rw---- 1 root disk 8, 0 Jan  2 10:00 sda"), equalTo("sda"));
+        assertThat("Should exist", results.exists);
+        assertThat("Should not be a file", !results.isFile);
+        assertThat(results.length, equalTo(-1L));
+    }
+
+    @Test
+    public void shouldNotParseListingLineWithUnknownDateFormat() {
+        assertThat(sshScpFile.parseLsListingLine(new SshScpFile.LsResults(), "-rw-r--r-- 1 user group 42 2015-12-17 15:28 build"), nullValue());
+        assertThat(sshScpFile.parseLsListingLine(new SshScpFile.LsResults(), "total 42"), nullValue());
+    }
+
+    @Test
+    public void shouldParseRecentTimestampInPreviousYearIfInFuture() {
+        long now = timestamp(2016, Calendar.JANUARY, 5, 12, 0);
+        assertThat(SshScpFile.parseLsTimestamp("Jan  5 11:59", now), equalTo(timestamp(2016, Calendar.JANUARY, 5, 11, 59)));
+        assertThat(SshScpFile.parseLsTimestamp("Dec 17 15:28", now), equalTo(timestamp(2015, Calendar.DECEMBER, 17, 15, 28)));
+        assertThat(SshScpFile.parseLsTimestamp("17 Dec 15:28", now), equalTo(timestamp(2015, Calendar.DECEMBER, 17, 15, 28)));
+        assertThat(SshScpFile.parseLsTimestamp("Foo 17 15:28", now), equalTo(-1L));
+    }
+
+    private static long timestamp(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
 }
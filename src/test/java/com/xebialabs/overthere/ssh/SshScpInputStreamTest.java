@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.ByteStreams;
+
+import net.schmizz.sshj.connection.channel.direct.Session;
+
+import static com.xebialabs.overthere.OperatingSystemFamily.UNIX;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SshScpInputStreamTest {
+
+    private Session session;
+    private Session.Command command;
+    private ByteArrayOutputStream sent;
+
+    @BeforeMethod
+    public void init() throws IOException {
+        session = mock(Session.class);
+        command = mock(Session.Command.class);
+        sent = new ByteArrayOutputStream();
+        when(session.exec("scp -f /tmp/a\\ file")).thenReturn(command);
+        when(command.getOutputStream()).thenReturn(sent);
+    }
+
+    @Test
+    public void shouldStreamFileContents() throws IOException {
+        remoteSends("C0644 11 a file\nhello world\0");
+
+        SshScpInputStream in = new SshScpInputStream(session, UNIX, "/tmp/a file");
+        assertThat(new String(ByteStreams.toByteArray(in), "UTF-8"), equalTo("hello world"));
+        in.close();
+
+        assertThat(sent.toByteArray(), equalTo(new byte[]{0, 0, 0}));
+        verify(session).close();
+    }
+
+    @Test
+    public void shouldSkipTimeRecord() throws IOException {
+        remoteSends("T1450362480 0 1450362480 0\nC0644 0 a file\n\0");
+
+        SshScpInputStream in = new SshScpInputStream(session, UNIX, "/tmp/a file");
+        assertThat(in.read(), equalTo(-1));
+        assertThat(sent.toByteArray(), equalTo(new byte[]{0, 0, 0, 0}));
+    }
+
+    @Test
+    public void shouldReportRemoteError() throws IOException {
+        remoteSends("\1scp: /tmp/a file: No such file or directory\n");
+
+        try {
+            new SshScpInputStream(session, UNIX, "/tmp/a file");
+            throw new AssertionError("Expected IOException");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), containsString("No such file or directory"));
+        }
+        verify(session).close();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldFailOnTruncatedFile() throws IOException {
+        remoteSends("C0644 11 a file\nhello");
+
+        ByteStreams.toByteArray(new SshScpInputStream(session, UNIX, "/tmp/a file"));
+    }
+
+    private void remoteSends(String s) throws IOException {
+        when(command.getInputStream()).thenReturn(new ByteArrayInputStream(s.getBytes("UTF-8")));
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import net.schmizz.sshj.sftp.SFTPClient;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SshSftpClientPoolTest {
+
+    private Set<SFTPClient> broken;
+
+    private SshSftpClientPool pool;
+
+    @BeforeMethod
+    public void createPool() {
+        broken = Collections.newSetFromMap(new IdentityHashMap<SFTPClient, Boolean>());
+        pool = new SshSftpClientPool(1) {
+            @Override
+            protected SFTPClient open() {
+                return mock(SFTPClient.class);
+            }
+
+            @Override
+            protected boolean isUsable(SFTPClient sftp) {
+                return !broken.contains(sftp);
+            }
+        };
+    }
+
+    @Test
+    public void shouldReuseReturnedClient() throws IOException {
+        SFTPClient sftp = pool.borrow();
+        pool.giveBack(sftp);
+
+        assertThat(pool.borrow(), sameInstance(sftp));
+        verify(sftp, never()).close();
+    }
+
+    @Test
+    public void shouldNotShareBorrowedClients() throws IOException {
+        SFTPClient first = pool.borrow();
+        SFTPClient second = pool.borrow();
+
+        assertThat(second, not(sameInstance(first)));
+    }
+
+    @Test
+    public void shouldCloseClientsBeyondMaxIdle() throws IOException {
+        SFTPClient first = pool.borrow();
+        SFTPClient second = pool.borrow();
+        pool.giveBack(first);
+        pool.giveBack(second);
+
+        assertThat(pool.getIdleCount(), equalTo(1));
+        verify(first, never()).close();
+        verify(second).close();
+    }
+
+    @Test
+    public void shouldReplaceClientThatIsNoLongerUsable() throws IOException {
+        SFTPClient sftp = pool.borrow();
+        pool.giveBack(sftp);
+        broken.add(sftp);
+
+        assertThat(pool.borrow(), not(sameInstance(sftp)));
+        verify(sftp).close();
+    }
+
+    @Test
+    public void shouldCloseIdleAndReturnedClientsWhenClosed() throws IOException {
+        SFTPClient idle = pool.borrow();
+        SFTPClient borrowed = pool.borrow();
+        pool.giveBack(idle);
+
+        pool.close();
+        verify(idle).close();
+        verify(borrowed, never()).close();
+
+        pool.giveBack(borrowed);
+        verify(borrowed).close();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldNotBorrowFromClosedPool() throws IOException {
+        pool.close();
+        pool.borrow();
+    }
+
+}
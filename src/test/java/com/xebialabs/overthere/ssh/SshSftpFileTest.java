@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.schmizz.sshj.sftp.FileAttributes;
+import net.schmizz.sshj.sftp.FileMode;
+import net.schmizz.sshj.sftp.PathComponents;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import net.schmizz.sshj.sftp.SFTPClient;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.OverthereFile;
+
+import static com.xebialabs.overthere.OperatingSystemFamily.UNIX;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SshSftpFileTest {
+
+    private static final FileAttributes REGULAR_FILE = new FileAttributes.Builder()
+            .withType(FileMode.Type.REGULAR).withPermissions(0644).withSize(42).withAtimeMtime(0, 1000).build();
+
+    private SshSftpConnection connection;
+
+    private SFTPClient sftp;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        sftp = mock(SFTPClient.class);
+        when(sftp.stat("/foo/bar")).thenReturn(REGULAR_FILE);
+        when(sftp.statExistence("/foo/bar")).thenReturn(REGULAR_FILE);
+
+        connection = mock(SshSftpConnection.class);
+        connection.fileInfoCache = new SshFileInfoCache<FileAttributes>(0, "/");
+        when(connection.getHostOperatingSystem()).thenReturn(UNIX);
+        when(connection.borrowSftpClient()).thenReturn(sftp);
+        when(connection.pathToSftpPath(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return (String) invocation.getArguments()[0];
+            }
+        });
+        doCallRealMethod().when(connection).invalidateFileInfo(anyString());
+    }
+
+    @Test
+    public void shouldRetrieveAttributesOnce() throws IOException {
+        SshSftpFile file = new SshSftpFile(connection, "/foo/bar");
+
+        assertThat(file.exists(), equalTo(true));
+        assertThat(file.isFile(), equalTo(true));
+        assertThat(file.isDirectory(), equalTo(false));
+        assertThat(file.length(), equalTo(42L));
+        assertThat(file.lastModified(), equalTo(1000000L));
+        assertThat(file.canRead(), equalTo(true));
+        assertThat(file.canExecute(), equalTo(false));
+
+        verify(sftp, times(1)).statExistence("/foo/bar");
+        verify(sftp, never()).stat("/foo/bar");
+    }
+
+    @Test
+    public void shouldRetrieveAttributesAgainAfterRefresh() throws IOException {
+        SshSftpFile file = new SshSftpFile(connection, "/foo/bar");
+        file.length();
+        file.refresh();
+        file.length();
+
+        verify(sftp, times(2)).stat("/foo/bar");
+    }
+
+    @Test
+    public void shouldRetrieveAttributesAgainAfterModification() throws IOException {
+        SshSftpFile file = new SshSftpFile(connection, "/foo/bar");
+        file.length();
+        file.setExecutable(true);
+        file.length();
+
+        verify(sftp, times(3)).stat("/foo/bar");
+    }
+
+    @Test
+    public void shouldShareCachedAttributesBetweenFilesUntilModified() throws IOException {
+        connection.fileInfoCache = new SshFileInfoCache<FileAttributes>(60000, "/");
+
+        assertThat(new SshSftpFile(connection, "/foo/bar").exists(), equalTo(true));
+        assertThat(new SshSftpFile(connection, "/foo/bar").length(), equalTo(42L));
+        verify(sftp, times(1)).statExistence("/foo/bar");
+        verify(sftp, never()).stat("/foo/bar");
+
+        new SshSftpFile(connection, "/foo/bar").deleteFile();
+        assertThat(new SshSftpFile(connection, "/foo/bar").length(), equalTo(42L));
+        verify(sftp, times(1)).stat("/foo/bar");
+    }
+
+    @Test
+    public void shouldNotKeepCachedAttributesAfterTheyHaveExpired() throws IOException {
+        connection.fileInfoCache = new SshFileInfoCache<FileAttributes>(60000, "/");
+        SshSftpFile dir = new SshSftpFile(connection, "/foo");
+        SshSftpFile child = new SshSftpFile(connection, "/foo/bar");
+        when(connection.getFile(any(OverthereFile.class), eq("bar"))).thenReturn(child);
+        when(sftp.ls("/foo")).thenReturn(Arrays.asList(new RemoteResourceInfo(new PathComponents("/foo", "bar", "/"), REGULAR_FILE)));
+
+        OverthereFile listed = dir.listFiles().get(0);
+        assertThat(listed.length(), equalTo(42L));
+        verify(sftp, never()).stat("/foo/bar");
+
+        connection.fileInfoCache.clear();
+        assertThat(listed.length(), equalTo(42L));
+        assertThat(listed.isFile(), equalTo(true));
+        verify(sftp, times(1)).stat("/foo/bar");
+    }
+
+    @Test
+    public void shouldUseAttributesFromListingWhenCacheIsEnabled() throws IOException {
+        connection.fileInfoCache = new SshFileInfoCache<FileAttributes>(60000, "/");
+        SshSftpFile dir = new SshSftpFile(connection, "/foo");
+        SshSftpFile child = new SshSftpFile(connection, "/foo/bar");
+        when(connection.getFile(any(OverthereFile.class), eq("bar"))).thenReturn(child);
+        when(sftp.ls("/foo")).thenReturn(Arrays.asList(new RemoteResourceInfo(new PathComponents("/foo", "bar", "/"), REGULAR_FILE)));
+
+        OverthereFile listed = dir.listFiles().get(0);
+        assertThat(listed.exists(), equalTo(true));
+        assertThat(listed.length(), equalTo(42L));
+
+        verify(sftp, never()).statExistence("/foo/bar");
+        verify(sftp, never()).stat("/foo/bar");
+    }
+
+    @Test
+    public void shouldNotKeepAttributesFromListingWhenCacheIsDisabled() throws IOException {
+        SshSftpFile dir = new SshSftpFile(connection, "/foo");
+        SshSftpFile child = new SshSftpFile(connection, "/foo/bar");
+        when(connection.getFile(any(OverthereFile.class), eq("bar"))).thenReturn(child);
+        when(sftp.ls("/foo")).thenReturn(Arrays.asList(new RemoteResourceInfo(new PathComponents("/foo", "bar", "/"), REGULAR_FILE)));
+
+        OverthereFile listed = dir.listFiles().get(0);
+        assertThat(listed.length(), equalTo(42L));
+
+        verify(sftp, times(1)).stat("/foo/bar");
+    }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.ssh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.OverthereConnection;
+import com.xebialabs.overthere.OverthereFile;
+import com.xebialabs.overthere.OverthereProcess;
+import com.xebialabs.overthere.RuntimeIOException;
+import com.xebialabs.overthere.TemporaryFolder;
+import com.xebialabs.overthere.local.LocalConnection;
+import com.xebialabs.overthere.local.LocalFile;
+import com.xebialabs.overthere.util.DaemonThreadFactory;
+
+import static com.xebialabs.overthere.util.OverthereUtils.read;
+import static com.xebialabs.overthere.util.OverthereUtils.write;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.fail;
+
+/**
+ * Runs the tar transfers against the local <code>tar</code>, standing in for the one on the remote host.
+ */
+public class SshTarTransferTest {
+
+    private static final String LONG_NAME = "a-file-name-that-is-longer-than-the-one-hundred-characters-that-fit-in-the-name-field-of-a-plain-tar-header.txt";
+
+    private static final Executor DRAIN_EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("test drainer"));
+
+    private TemporaryFolder temp = new TemporaryFolder();
+
+    private OverthereConnection local;
+
+    private SshScpConnection connection;
+
+    private OverthereFile tree;
+
+    private AtomicBoolean destroyed = new AtomicBoolean();
+
+    @BeforeMethod
+    public void createTree() throws IOException {
+        temp.create();
+        destroyed.set(false);
+        local = LocalConnection.getLocalConnection();
+
+        connection = mock(SshScpConnection.class);
+        connection.tarCreateCommand = SshConnectionBuilder.TAR_CREATE_COMMAND_DEFAULT;
+        connection.tarExtractCommand = SshConnectionBuilder.TAR_EXTRACT_COMMAND_DEFAULT;
+        when(connection.getOutputPumpExecutor()).thenReturn(DRAIN_EXECUTOR);
+
+        tree = LocalFile.valueOf(temp.newFolder("tree"));
+        write("a".getBytes(), tree.getFile("a.txt"));
+        write("#!/bin/sh".getBytes(), tree.getFile("run.sh"));
+        tree.getFile("run.sh").setExecutable(true);
+        tree.getFile("sub").mkdir();
+        tree.getFile("sub").getFile("empty").mkdir();
+        write("long".getBytes(), tree.getFile("sub").getFile(LONG_NAME));
+    }
+
+    @AfterMethod
+    public void deleteTree() {
+        temp.delete();
+    }
+
+    @Test
+    public void shouldUploadTreeThroughTarExtract() {
+        OverthereFile target = LocalFile.valueOf(new File(temp.getRoot(), "uploaded"));
+        target.mkdir();
+
+        SshTarTransfer.upload(tree, remote(target.getPath()));
+
+        assertTree(target);
+    }
+
+    @Test
+    public void shouldDownloadTreeThroughTarCreate() {
+        OverthereFile target = LocalFile.valueOf(new File(temp.getRoot(), "downloaded"));
+
+        SshTarTransfer.download(remote(tree.getPath()), target);
+
+        assertTree(target);
+    }
+
+    @Test(expectedExceptions = RuntimeIOException.class)
+    public void shouldFailWhenTarFails() {
+        connection.tarCreateCommand = "tar chf - -C /does-not-exist{0} .";
+
+        SshTarTransfer.download(remote(tree.getPath()), LocalFile.valueOf(new File(temp.getRoot(), "downloaded")));
+    }
+
+    @Test
+    public void shouldFailWhenExtractedFileCannotBeClosed() {
+        OverthereFile target = mock(OverthereFile.class);
+        when(target.exists()).thenReturn(true);
+        when(target.getFile(anyString())).thenReturn(target);
+        when(target.getOutputStream()).thenReturn(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void close() throws IOException {
+                throw new IOException("write failed");
+            }
+        });
+
+        try {
+            SshTarTransfer.download(remote(tree.getPath()), target);
+            fail("Expected RuntimeIOException");
+        } catch (RuntimeIOException expected) {
+            assertThat(expected.getCause().getMessage(), equalTo("write failed"));
+        }
+        assertThat(destroyed.get(), equalTo(true));
+    }
+
+    @Test
+    public void shouldDestroyTarWhenSourceCannotBeRead() {
+        OverthereFile source = mock(OverthereFile.class);
+        when(source.listFiles()).thenThrow(new UnsupportedOperationException());
+        OverthereFile target = LocalFile.valueOf(new File(temp.getRoot(), "uploaded"));
+        target.mkdir();
+
+        try {
+            SshTarTransfer.upload(source, remote(target.getPath()));
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+        assertThat(destroyed.get(), equalTo(true));
+    }
+
+    private void assertTree(OverthereFile target) {
+        assertThat(new String(read(target.getFile("a.txt"))), equalTo("a"));
+        assertThat(target.getFile("run.sh").canExecute(), equalTo(true));
+        assertThat(target.getFile("a.txt").canExecute(), equalTo(false));
+        assertThat(target.getFile("sub").getFile("empty").isDirectory(), equalTo(true));
+        assertThat(new String(read(target.getFile("sub").getFile(LONG_NAME))), equalTo("long"));
+    }
+
+    private SshScpFile remote(String path) {
+        SshScpFile file = mock(SshScpFile.class);
+        when(file.getConnection()).thenReturn(connection);
+        when(file.getPath()).thenReturn(path);
+        when(file.exists()).thenReturn(true);
+        when(file.startProcess(any(CmdLine.class))).thenAnswer(new Answer<OverthereProcess>() {
+            @Override
+            public OverthereProcess answer(InvocationOnMock invocation) {
+                final OverthereProcess process = local.startProcess((CmdLine) invocation.getArguments()[0]);
+                return new OverthereProcess() {
+                    @Override
+                    public OutputStream getStdin() {
+                        return process.getStdin();
+                    }
+
+                    @Override
+                    public InputStream getStdout() {
+                        return process.getStdout();
+                    }
+
+                    @Override
+                    public InputStream getStderr() {
+                        return process.getStderr();
+                    }
+
+                    @Override
+                    public int waitFor() throws InterruptedException {
+                        return process.waitFor();
+                    }
+
+                    @Override
+                    public void destroy() {
+                        destroyed.set(true);
+                        process.destroy();
+                    }
+
+                    @Override
+                    public int exitValue() {
+                        return process.exitValue();
+                    }
+                };
+            }
+        });
+        return file;
+    }
+
+}
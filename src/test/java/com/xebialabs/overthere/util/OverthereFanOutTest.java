@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.ConnectionOptions;
+import com.xebialabs.overthere.OverthereConnection;
+import com.xebialabs.overthere.RuntimeIOException;
+
+import static com.xebialabs.overthere.local.LocalConnection.LOCAL_PROTOCOL;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class OverthereFanOutTest {
+
+    private static List<OverthereFanOut.Target> localTargets(int count) {
+        List<OverthereFanOut.Target> targets = new ArrayList<OverthereFanOut.Target>();
+        for (int i = 0; i < count; i++) {
+            targets.add(new OverthereFanOut.Target(LOCAL_PROTOCOL, new ConnectionOptions()));
+        }
+        return targets;
+    }
+
+    @Test
+    public void shouldReturnResultsInTargetOrder() {
+        final AtomicInteger counter = new AtomicInteger();
+        List<OverthereFanOut.Result<Integer>> results = new OverthereFanOut(3, 0).run(localTargets(5), new OverthereFanOut.HostTask<Integer>() {
+            @Override
+            public Integer run(OverthereConnection connection) {
+                return counter.incrementAndGet();
+            }
+        });
+
+        assertThat(results.size(), equalTo(5));
+        for (OverthereFanOut.Result<Integer> each : results) {
+            assertThat(each.isSuccess(), equalTo(true));
+        }
+        assertThat(counter.get(), equalTo(5));
+    }
+
+    @Test
+    public void shouldBoundParallelism() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        new OverthereFanOut(2, 0).run(localTargets(6), new OverthereFanOut.HostTask<Void>() {
+            @Override
+            public Void run(OverthereConnection connection) {
+                int now = running.incrementAndGet();
+                maxRunning.set(Math.max(maxRunning.get(), now));
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return null;
+            }
+        });
+
+        assertThat(maxRunning.get(), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    public void shouldReportFailurePerHost() {
+        List<OverthereFanOut.Result<Void>> results = new OverthereFanOut(2, 0).run(localTargets(1), new OverthereFanOut.HostTask<Void>() {
+            @Override
+            public Void run(OverthereConnection connection) {
+                throw new RuntimeIOException("boom");
+            }
+        });
+
+        assertThat(results.get(0).isSuccess(), equalTo(false));
+        assertThat(results.get(0).getException(), instanceOf(RuntimeIOException.class));
+    }
+
+    @Test
+    public void shouldTimeOutSlowHost() {
+        List<OverthereFanOut.Result<Void>> results = new OverthereFanOut(2, 100).run(localTargets(1), new OverthereFanOut.HostTask<Void>() {
+            @Override
+            public Void run(OverthereConnection connection) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    throw new RuntimeIOException("interrupted", e);
+                }
+                return null;
+            }
+        });
+
+        assertThat(results.get(0).isTimedOut(), equalTo(true));
+        assertThat(results.get(0).getDurationMillis() < 10000, equalTo(true));
+    }
+
+    @Test
+    public void shouldCaptureCommandOutput() {
+        List<OverthereFanOut.Result<OverthereFanOut.CommandOutput>> results = new OverthereFanOut(2, 0)
+                .execute(Arrays.asList(new OverthereFanOut.Target(LOCAL_PROTOCOL, new ConnectionOptions())), CmdLine.build("echo", "hello"));
+
+        assertThat(results.get(0).isSuccess(), equalTo(true));
+        assertThat(results.get(0).getValue().getExitCode(), equalTo(0));
+        assertThat(results.get(0).getValue().getStdout(), equalTo("hello"));
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2008-2016, XebiaLabs B.V., All rights reserved.
+ *
+ *
+ * Overthere is licensed under the terms of the GPLv2
+ * <http://www.gnu.org/licenses/old-licenses/gpl-2.0.html>, like most XebiaLabs Libraries.
+ * There are special exceptions to the terms and conditions of the GPLv2 as it is applied to
+ * this software, see the FLOSS License Exception
+ * <http://github.com/xebialabs/overthere/blob/master/LICENSE>.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth
+ * Floor, Boston, MA 02110-1301  USA
+ */
+package com.xebialabs.overthere.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import org.testng.annotations.Test;
+
+import static com.xebialabs.overthere.util.SpillingCapturingOverthereExecutionOutputHandler.spillingCapturingHandler;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SpillingCapturingOverthereExecutionOutputHandlerTest {
+
+    @Test
+    public void shouldKeepSmallOutputInMemory() throws IOException {
+        SpillingCapturingOverthereExecutionOutputHandler handler = spillingCapturingHandler(100);
+        try {
+            handler.handleLine("one");
+            handler.handleLine("two");
+
+            assertThat(handler.isSpilled(), equalTo(false));
+            assertThat(handler.getLineCount(), equalTo(2L));
+            assertThat(read(handler.getOutputReader()), equalTo("one\ntwo"));
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    public void shouldSpillLargeOutputToDisk() throws IOException {
+        SpillingCapturingOverthereExecutionOutputHandler handler = spillingCapturingHandler(10);
+        try {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                String line = "line \u00e9 " + i;
+                handler.handleLine(line);
+                if (i > 0) {
+                    expected.append('\n');
+                }
+                expected.append(line);
+            }
+
+            assertThat(handler.isSpilled(), equalTo(true));
+            assertThat(handler.getLineCount(), equalTo(1000L));
+            assertThat(read(handler.getOutputReader()), equalTo(expected.toString()));
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    public void shouldOnlyReturnOutputCapturedBeforeReaderWasCreated() throws IOException {
+        SpillingCapturingOverthereExecutionOutputHandler handler = spillingCapturingHandler(0);
+        try {
+            handler.handleLine("before");
+            Reader reader = handler.getOutputReader();
+            handler.handleLine("after");
+
+            assertThat(read(reader), equalTo("before"));
+            assertThat(read(handler.getOutputReader()), equalTo("before\nafter"));
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldNotReturnOutputAfterClose() {
+        SpillingCapturingOverthereExecutionOutputHandler handler = spillingCapturingHandler(0);
+        handler.handleLine("line");
+        handler.close();
+        handler.getOutputReader();
+    }
+
+    private static String read(Reader reader) throws IOException {
+        BufferedReader buffered = new BufferedReader(reader);
+        try {
+            StringBuilder b = new StringBuilder();
+            char[] chars = new char[1024];
+            int n;
+            while ((n = buffered.read(chars)) >= 0) {
+                b.append(chars, 0, n);
+            }
+            return b.toString();
+        } finally {
+            buffered.close();
+        }
+    }
+
+}